@@ -1,5 +1,6 @@
 package com.watermark;
 
+import com.watermark.cli.CommandLineRunner;
 import com.watermark.ui.LookAndFeelManager;
 import com.watermark.ui.MainWindow;
 
@@ -7,6 +8,12 @@ import javax.swing.*;
 
 public class Main {
     public static void main(String[] args) {
+        // 带参数启动时进入无界面批处理模式
+        if (args.length > 0) {
+            System.setProperty("java.awt.headless", "true");
+            System.exit(CommandLineRunner.run(args));
+        }
+
         SwingUtilities.invokeLater(() -> {
             // 初始化并应用统一的外观设置
             LookAndFeelManager.initLookAndFeel();
@@ -15,4 +22,4 @@ public class Main {
             mainWindow.createAndShow();
         });
     }
-}
\ No newline at end of file
+}
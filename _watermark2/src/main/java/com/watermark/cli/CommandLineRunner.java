@@ -0,0 +1,308 @@
+package com.watermark.cli;
+
+import com.watermark.controller.ImageImportController;
+import com.watermark.model.ExportSettings;
+import com.watermark.model.WatermarkTemplate;
+import com.watermark.utils.BatchProcessor;
+import com.watermark.utils.ExportManifest;
+import com.watermark.utils.ExportPipeline;
+import com.watermark.utils.ImageExporter;
+import com.watermark.utils.TemplateManager;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 无界面命令行批处理模式，与图形界面共用同一套水印渲染和导出逻辑。
+ * 适合在没有显示器的渲染服务器上处理大批量图片。
+ */
+public class CommandLineRunner {
+    private final List<File> inputs = new ArrayList<>();
+    private final ExportSettings settings = new ExportSettings();
+    private String templateName;
+    private String text;
+    private File outputFolder;
+    private int threadCount = BatchProcessor.defaultThreadCount();
+    private boolean overwrite = false;
+
+    /**
+     * 命令行入口，返回进程退出码
+     */
+    public static int run(String[] args) {
+        CommandLineRunner runner = new CommandLineRunner();
+        try {
+            if (!runner.parseArguments(args)) {
+                printUsage();
+                return 2;
+            }
+            return runner.execute();
+        } catch (IllegalArgumentException e) {
+            System.err.println("参数错误：" + e.getMessage());
+            printUsage();
+            return 2;
+        } catch (Exception e) {
+            System.err.println("批处理失败：" + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("用法: java -jar photo-watermark.jar --batch [选项] <输入文件或文件夹>...");
+        System.out.println("  --template <名称或路径>      已保存的水印模板（templates目录中的名称或.dat文件路径）");
+        System.out.println("  --text <文字>                替换文本水印模板中的文字，可使用变量 {date} {camera} {filename} {index}");
+        System.out.println("  --output <文件夹>            导出文件夹");
+        System.out.println("  --format <JPEG|PNG>          输出格式，默认JPEG");
+        System.out.println("  --naming <original|prefix|suffix>  命名规则，默认original");
+        System.out.println("  --prefix <前缀>              命名规则为prefix时使用的前缀");
+        System.out.println("  --suffix <后缀>              命名规则为suffix时使用的后缀");
+        System.out.println("  --quality <0-100>            JPEG质量，默认90");
+        System.out.println("  --optimize-huffman           JPEG使用优化的Huffman表（文件更小，编码稍慢）");
+        System.out.println("  --progressive                输出渐进式JPEG");
+        System.out.println("  --subsampling <4:2:0|4:2:2|4:4:4>  JPEG色度抽样，默认4:2:0");
+        System.out.println("  --partial-reencode           JPEG源图只重新编码水印覆盖的块（沿用源文件的编码参数，忽略质量和编码选项）");
+        System.out.println("  --threads <线程数>           工作线程数，默认为CPU核心数");
+        System.out.println("  --overwrite                  允许覆盖原文件");
+        System.out.println("  --force                      忽略导出清单，全部重新导出（默认跳过没有变化的图片）");
+    }
+
+    private boolean parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--batch":
+                    break;
+                case "--template":
+                    templateName = requireValue(args, ++i, arg);
+                    break;
+                case "--output":
+                    outputFolder = new File(requireValue(args, ++i, arg));
+                    break;
+                case "--format":
+                    String format = requireValue(args, ++i, arg).toUpperCase();
+                    if ("JPG".equals(format)) {
+                        format = "JPEG";
+                    }
+                    if (!"JPEG".equals(format) && !"PNG".equals(format)) {
+                        throw new IllegalArgumentException("不支持的输出格式: " + format);
+                    }
+                    settings.setOutputFormat(format);
+                    break;
+                case "--naming":
+                    String namingRule = requireValue(args, ++i, arg);
+                    if (!"original".equals(namingRule) && !"prefix".equals(namingRule) && !"suffix".equals(namingRule)) {
+                        throw new IllegalArgumentException("不支持的命名规则: " + namingRule);
+                    }
+                    settings.setNamingRule(namingRule);
+                    break;
+                case "--prefix":
+                    settings.setPrefix(requireValue(args, ++i, arg));
+                    break;
+                case "--suffix":
+                    settings.setSuffix(requireValue(args, ++i, arg));
+                    break;
+                case "--quality":
+                    settings.setQuality(Math.max(0, Math.min(100, parseInt(requireValue(args, ++i, arg), arg))));
+                    break;
+                case "--optimize-huffman":
+                    settings.setOptimizeHuffman(true);
+                    break;
+                case "--progressive":
+                    settings.setProgressive(true);
+                    break;
+                case "--subsampling":
+                    String subsampling = requireValue(args, ++i, arg);
+                    if (!"4:2:0".equals(subsampling) && !"4:2:2".equals(subsampling) && !"4:4:4".equals(subsampling)) {
+                        throw new IllegalArgumentException("不支持的色度抽样: " + subsampling);
+                    }
+                    settings.setChromaSubsampling(subsampling);
+                    break;
+                case "--partial-reencode":
+                    settings.setPartialJpegReencode(true);
+                    break;
+                case "--text":
+                    text = requireValue(args, ++i, arg);
+                    break;
+                case "--threads":
+                    threadCount = parseInt(requireValue(args, ++i, arg), arg);
+                    break;
+                case "--overwrite":
+                    overwrite = true;
+                    break;
+                case "--force":
+                    settings.setForceRebuild(true);
+                    break;
+                case "--help":
+                case "-h":
+                    return false;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("未知选项: " + arg);
+                    }
+                    inputs.add(new File(arg));
+                    break;
+            }
+        }
+
+        if (templateName == null) {
+            throw new IllegalArgumentException("缺少 --template");
+        }
+        if (outputFolder == null) {
+            throw new IllegalArgumentException("缺少 --output");
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("缺少输入文件或文件夹");
+        }
+        return true;
+    }
+
+    private static String requireValue(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " 需要一个参数值");
+        }
+        return args[index];
+    }
+
+    private static int parseInt(String value, String option) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " 需要整数参数: " + value);
+        }
+    }
+
+    private int execute() throws IOException, InterruptedException {
+        WatermarkTemplate template = TemplateManager.getInstance().loadTemplate(templateName);
+        if (template == null) {
+            throw new IllegalArgumentException("找不到水印模板: " + templateName);
+        }
+
+        BufferedImage watermarkImage = null;
+        if (template.getType() == WatermarkTemplate.TemplateType.IMAGE) {
+            if (template.getImagePath() == null || !new File(template.getImagePath()).isFile()) {
+                throw new IllegalArgumentException("找不到水印图片: " + template.getImagePath());
+            }
+            watermarkImage = ImageIO.read(new File(template.getImagePath()));
+            if (watermarkImage == null) {
+                throw new IOException("无法读取水印图片: " + template.getImagePath());
+            }
+        } else if (text != null) {
+            template.setTextWatermark(text);
+        } else if (template.getTextWatermark() == null) {
+            throw new IllegalArgumentException("模板中没有水印文本: " + templateName);
+        }
+
+        List<File> files = collectImageFiles();
+        if (files.isEmpty()) {
+            System.out.println("未找到图片文件");
+            return 0;
+        }
+
+        if (!outputFolder.isDirectory() && !outputFolder.mkdirs()) {
+            throw new IOException("无法创建导出文件夹: " + outputFolder);
+        }
+
+        System.out.println("找到 " + files.size() + " 张图片，使用 " + threadCount + " 个线程处理");
+
+        final BufferedImage logo = watermarkImage;
+        final int total = files.size();
+        final long startTime = System.currentTimeMillis();
+        final int[] processed = {0};
+        final int[] failed = {0};
+
+        // 会覆盖原文件的条目直接记为失败，其余交给导出流水线
+        // 多个输入文件夹中的同名文件写到同一个导出文件夹，重名的输出文件自动编号
+        List<ExportPipeline.Item> items = new ArrayList<>(total);
+        Set<String> usedOutputs = new HashSet<>();
+        for (File file : files) {
+            File outputFile = ImageExporter.uniqueOutputFile(outputFolder,
+                    ImageExporter.generateNewFileName(file.getName(), settings), usedOutputs);
+            if (!overwrite && outputFile.getCanonicalFile().equals(file.getCanonicalFile())) {
+                processed[0]++;
+                failed[0]++;
+                System.err.println("处理图片失败 " + file + ": 输出文件会覆盖原文件（使用 --overwrite 允许覆盖）");
+                continue;
+            }
+            items.add(new ExportPipeline.Item(file, template, logo, outputFile));
+        }
+
+        // 导出清单记录已导出的图片，重复运行同一批次时只处理有变化的图片
+        ExportManifest manifest = ExportManifest.open(outputFolder, settings);
+        ExportPipeline pipeline = new ExportPipeline(threadCount);
+        int successCount;
+        try {
+            successCount = pipeline.run(items, settings, manifest, new BatchProcessor.Listener<File>() {
+                @Override
+                public void onItemDone(int index, File result) {
+                    processed[0]++;
+                    reportProgress(processed[0], total);
+                }
+
+                @Override
+                public void onItemFailed(int index, Exception e) {
+                    processed[0]++;
+                    failed[0]++;
+                    System.err.println("处理图片失败 " + items.get(index).getSource() + ": " + e.getMessage());
+                    reportProgress(processed[0], total);
+                }
+            });
+        } finally {
+            manifest.close();
+        }
+
+        long seconds = (System.currentTimeMillis() - startTime) / 1000;
+        System.out.println("处理完成! 成功: " + successCount + "（其中没有变化而跳过: " + pipeline.getSkippedCount()
+                + "）, 失败: " + failed[0] + ", 耗时: " + seconds + " 秒");
+        System.out.println("输出目录: " + outputFolder.getAbsolutePath());
+        return failed[0] > 0 ? 1 : 0;
+    }
+
+    // 每处理1%或最后一张时输出一次进度，避免大批量时刷屏
+    private static void reportProgress(int processed, int total) {
+        int step = Math.max(1, total / 100);
+        if (processed % step == 0 || processed == total) {
+            System.out.println("已处理 " + processed + " / " + total);
+        }
+    }
+
+    // 展开输入参数：文件夹中的图片文件（不递归）与单个图片文件
+    private List<File> collectImageFiles() {
+        List<File> files = new ArrayList<>();
+        for (File input : inputs) {
+            if (input.isDirectory()) {
+                File[] children = input.listFiles((dir, name) -> isImageFileName(name));
+                if (children != null) {
+                    // 按文件名排序，{index}序号在各平台上一致
+                    Arrays.sort(children);
+                    for (File child : children) {
+                        if (child.isFile()) {
+                            files.add(child);
+                        }
+                    }
+                }
+            } else if (input.isFile()) {
+                files.add(input);
+            } else {
+                System.err.println("输入不存在，已跳过: " + input);
+            }
+        }
+        return files;
+    }
+
+    private static boolean isImageFileName(String name) {
+        String lowerName = name.toLowerCase();
+        for (String extension : ImageImportController.getSupportedExtensions()) {
+            if (lowerName.endsWith("." + extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,178 @@
+package com.watermark.controller;
+
+import com.watermark.model.ExportSettings;
+import com.watermark.model.ImageItem;
+import com.watermark.ui.ImageListModel;
+import com.watermark.ui.MainWindow;
+import com.watermark.utils.BatchProcessor;
+import com.watermark.utils.ExportManifest;
+import com.watermark.utils.ExportPipeline;
+import com.watermark.utils.ImageExporter;
+import com.watermark.utils.TextTokens;
+
+import javax.swing.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 在后台导出流水线中对列表中的所有图片按配方渲染原始分辨率的结果并写出，
+ * 并通过进度对话框显示进度、支持取消。
+ * 导出文件夹中的导出清单记录已导出的图片，再次导出时跳过没有变化的图片。
+ */
+public class BatchWatermarkWorker extends SwingWorker<Integer, Integer> {
+
+    private final MainWindow mainWindow;
+    private final String completeMessage;
+    private final ExportSettings settings;
+    private final File outputFolder;
+    private final List<ExportPipeline.Item> items;
+    private final ExportPipeline pipeline;
+    private final ProgressMonitor progressMonitor;
+    private final Timer cancelTimer;
+    private volatile int processedCount = 0;
+    private volatile int failedCount = 0;
+    private volatile int copyCount = 0;
+
+    /**
+     * completeMessage中的 %d 会被替换为成功处理的图片数量
+     */
+    public BatchWatermarkWorker(MainWindow mainWindow, String title, String completeMessage,
+                                File outputFolder, ExportSettings settings) {
+        this.mainWindow = mainWindow;
+        this.completeMessage = completeMessage;
+        this.settings = settings;
+        this.outputFolder = outputFolder;
+        this.pipeline = new ExportPipeline(BatchProcessor.defaultThreadCount());
+
+        // 在事件线程中拍下列表快照并按命名规则生成输出文件，后台线程只访问快照。
+        // 递归导入的图片写到导出文件夹中对应的子文件夹，仍然重名的输出文件自动编号，不会互相覆盖。
+        // 合并了重复文件的条目只渲染一次，按每个重复文件的子文件夹和文件名写出副本；
+        // 水印文字含有文件名或序号变量时每个文件的结果不同，重复文件作为单独的条目导出
+        ImageListModel model = mainWindow.getImageListModel();
+        this.items = new ArrayList<>(model.getSize());
+        Set<String> usedOutputs = new HashSet<>();
+        for (int i = 0; i < model.getSize(); i++) {
+            ImageItem item = model.getElementAt(i);
+            File output = outputFile(item, usedOutputs);
+            boolean separate = TextTokens.dependsOnFile(item.getRecipe());
+            List<File> copies = new ArrayList<>();
+            List<ExportPipeline.Item> separated = new ArrayList<>();
+            for (ImageItem duplicate : item.getDuplicates()) {
+                File copy = outputFile(duplicate, usedOutputs);
+                if (separate) {
+                    separated.add(new ExportPipeline.Item(duplicate.getFile(), item.getRecipe(),
+                            item.getWatermarkImage(), copy));
+                } else {
+                    copies.add(copy);
+                }
+            }
+            items.add(new ExportPipeline.Item(item.getFile(), item.getRecipe(), item.getWatermarkImage(),
+                    output, copies));
+            items.addAll(separated);
+        }
+
+        progressMonitor = new ProgressMonitor(mainWindow.getFrame(), title, "", 0, items.size());
+        progressMonitor.setMillisToDecideToPopup(0);
+        progressMonitor.setMillisToPopup(0);
+
+        // 定时检查取消按钮，避免单张大图处理时间过长导致取消无响应
+        cancelTimer = new Timer(200, e -> {
+            if (progressMonitor.isCanceled() && !isDone()) {
+                pipeline.cancel();
+                cancel(true);
+            }
+        });
+    }
+
+    private File outputFile(ImageItem item, Set<String> usedOutputs) {
+        return ImageExporter.uniqueOutputFile(new File(outputFolder, item.getRelativeFolder()),
+                ImageExporter.generateNewFileName(item.getFile().getName(), settings), usedOutputs);
+    }
+
+    /**
+     * 开始执行批处理
+     */
+    public void start() {
+        cancelTimer.start();
+        execute();
+    }
+
+    @Override
+    protected Integer doInBackground() throws Exception {
+        // 原始分辨率的结果只在流水线中短暂存在，编码后即可回收
+        ExportManifest manifest = ExportManifest.open(outputFolder, settings);
+        try {
+            return runPipeline(manifest);
+        } finally {
+            try {
+                manifest.close();
+            } catch (Exception e) {
+                System.err.println("保存导出清单失败：" + e.getMessage());
+            }
+        }
+    }
+
+    private int runPipeline(ExportManifest manifest) throws InterruptedException {
+        return pipeline.run(items, settings, manifest,
+                new BatchProcessor.Listener<File>() {
+                    @Override
+                    public void onItemDone(int index, File result) {
+                        processedCount++;
+                        copyCount += items.get(index).getCopies().size();
+                        publish(index);
+                    }
+
+                    @Override
+                    public void onItemFailed(int index, Exception e) {
+                        processedCount++;
+                        failedCount++;
+                        publish(index);
+                        System.err.println("处理图片失败：" + (index >= 0 ? items.get(index).getSource() : "") + " - " + e.getMessage());
+                    }
+                });
+    }
+
+    @Override
+    protected void process(List<Integer> chunks) {
+        progressMonitor.setProgress(processedCount);
+        progressMonitor.setNote("已处理 " + processedCount + " / " + items.size());
+    }
+
+    @Override
+    protected void done() {
+        cancelTimer.stop();
+        progressMonitor.close();
+
+        try {
+            int successCount = get();
+            String message = String.format(completeMessage, successCount);
+            if (copyCount > 0) {
+                message += "\n另有 " + copyCount + " 张重复的图片直接复用了渲染结果";
+            }
+            int skippedCount = pipeline.getSkippedCount();
+            if (skippedCount > 0) {
+                message += "\n其中 " + skippedCount + " 张没有变化，已跳过";
+            }
+            if (failedCount > 0) {
+                message += "\n成功 " + successCount + " 张，失败 " + failedCount + " 张";
+            }
+            JOptionPane.showMessageDialog(mainWindow.getFrame(), message, "完成",
+                    failedCount > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+        } catch (CancellationException e) {
+            JOptionPane.showMessageDialog(mainWindow.getFrame(),
+                    "已取消，已处理 " + processedCount + " 张图片",
+                    "已取消",
+                    JOptionPane.INFORMATION_MESSAGE);
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(mainWindow.getFrame(),
+                    "处理图片时发生错误：" + e.getMessage(),
+                    "错误",
+                    JOptionPane.ERROR_MESSAGE);
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.watermark.controller;
+
+import com.watermark.model.ImageItem;
+import com.watermark.ui.ImageListModel;
+import com.watermark.ui.MainWindow;
+import com.watermark.utils.BatchProcessor;
+import com.watermark.utils.FileHasher;
+import com.watermark.utils.LibraryCatalog;
+
+import javax.swing.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 导入后在后台找出内容完全相同的图片，合并为列表中的一个条目：
+ * 只解码、合成和编码一次，导出时按每个源文件的文件名分别写出。
+ * 只有大小与列表中其他文件相同的文件才可能重复，只对这些文件并行计算内容哈希；
+ * 图片库目录中已有且未过期的哈希直接使用，不再读取文件。
+ */
+public class DuplicateScanWorker extends SwingWorker<Void, DuplicateScanWorker.HashResult> {
+
+    private final MainWindow mainWindow;
+    private final List<ImageItem> candidates = new ArrayList<>();
+    private final BatchProcessor processor = new BatchProcessor(BatchProcessor.defaultThreadCount());
+
+    /**
+     * 在事件线程中创建，拍下需要计算哈希的条目
+     */
+    public DuplicateScanWorker(MainWindow mainWindow) {
+        this.mainWindow = mainWindow;
+
+        ImageListModel model = mainWindow.getImageListModel();
+        Map<Long, Integer> sizeCounts = new HashMap<>();
+        for (int i = 0; i < model.getSize(); i++) {
+            sizeCounts.merge(model.getElementAt(i).getFileSize(), 1, Integer::sum);
+        }
+        for (int i = 0; i < model.getSize(); i++) {
+            ImageItem item = model.getElementAt(i);
+            if (item.getContentHash() == null && sizeCounts.get(item.getFileSize()) > 1) {
+                candidates.add(item);
+            }
+        }
+    }
+
+    /**
+     * 没有可能重复的文件时不启动后台任务
+     */
+    public void start() {
+        if (!candidates.isEmpty()) {
+            execute();
+        }
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        processor.run(candidates.size(), index -> hash(candidates.get(index).getFile()),
+                new BatchProcessor.Listener<String>() {
+                    @Override
+                    public void onItemDone(int index, String hash) {
+                        publish(new HashResult(candidates.get(index), hash));
+                    }
+
+                    @Override
+                    public void onItemFailed(int index, Exception e) {
+                        // 读取失败的文件不参与去重，仍作为单独的条目
+                        System.err.println("计算文件哈希失败：" + (index >= 0 ? candidates.get(index).getFile() : "")
+                                + " - " + e.getMessage());
+                    }
+                });
+        return null;
+    }
+
+    // 图片库目录中的哈希与文件当前的大小和修改时间一致时直接使用
+    private static String hash(File file) throws Exception {
+        LibraryCatalog.Entry entry = LibraryCatalog.getInstance().lookup(file);
+        if (entry != null && entry.matches(file) && entry.hasContentHash()) {
+            return FileHasher.toHex(entry.getContentHash());
+        }
+        return FileHasher.toHex(FileHasher.sha256(file));
+    }
+
+    @Override
+    protected void process(List<HashResult> chunks) {
+        for (HashResult result : chunks) {
+            result.item.setContentHash(result.hash);
+        }
+        mergeDuplicates();
+    }
+
+    /**
+     * 按列表顺序保留每组重复文件中的第一个条目，其余条目并入其中并从列表移除
+     */
+    private void mergeDuplicates() {
+        ImageListModel model = mainWindow.getImageListModel();
+        Map<String, ImageItem> firstByHash = new HashMap<>();
+        List<ImageItem> merged = new ArrayList<>();
+        for (int i = 0; i < model.getSize(); i++) {
+            ImageItem item = model.getElementAt(i);
+            if (item.getContentHash() == null) {
+                continue;
+            }
+            ImageItem first = firstByHash.putIfAbsent(item.getContentHash(), item);
+            if (first != null) {
+                first.addDuplicate(item);
+                merged.add(item);
+            }
+        }
+        if (!merged.isEmpty()) {
+            model.removeAll(merged);
+            mainWindow.updateImageList();
+        }
+    }
+
+    static class HashResult {
+        private final ImageItem item;
+        private final String hash;
+
+        private HashResult(ImageItem item, String hash) {
+            this.item = item;
+            this.hash = hash;
+        }
+    }
+}
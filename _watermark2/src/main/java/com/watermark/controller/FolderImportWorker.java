@@ -0,0 +1,86 @@
+package com.watermark.controller;
+
+import com.watermark.model.ImageItem;
+import com.watermark.ui.MainWindow;
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 在后台递归导入文件夹中的图片：用NIO逐个遍历目录树，遍历时直接取得文件的大小和修改时间，
+ * 发现的图片经publish合并成批后追加到列表，遍历尚未结束时列表已可以浏览。
+ * 遍历结束后在后台合并内容重复的图片。
+ */
+public class FolderImportWorker extends SwingWorker<Integer, ImageItem> {
+
+    private final MainWindow mainWindow;
+    private final List<File> folders;
+
+    public FolderImportWorker(MainWindow mainWindow, List<File> folders) {
+        this.mainWindow = mainWindow;
+        this.folders = folders;
+    }
+
+    @Override
+    protected Integer doInBackground() throws Exception {
+        int[] count = {0};
+        for (File folder : folders) {
+            if (isCancelled()) {
+                break;
+            }
+            // 不跟随符号链接，避免链接成环时无限遍历
+            Path root = folder.toPath();
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String name = file.getFileName().toString();
+                    if (attrs.isRegularFile() && ImageImportController.isImageFileName(name)) {
+                        // 记录相对于所选文件夹的子文件夹，不同子文件夹中的同名文件导出时不会互相覆盖
+                        String relativeFolder = root.relativize(file.getParent()).toString();
+                        publish(new ImageItem(name, file.toFile(), attrs.lastModifiedTime().toMillis(), attrs.size(),
+                                relativeFolder));
+                        count[0]++;
+                    }
+                    return isCancelled() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // 无权限访问的子文件夹等跳过，不影响其余部分
+                    System.err.println("无法访问：" + file + " - " + e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        return count[0];
+    }
+
+    @Override
+    protected void process(List<ImageItem> chunks) {
+        mainWindow.getImageListModel().addAll(chunks);
+    }
+
+    @Override
+    protected void done() {
+        try {
+            get();
+        } catch (CancellationException e) {
+            // 已发现的图片保留在列表中
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(mainWindow.getFrame(),
+                    "导入文件夹时发生错误：" + e.getMessage(),
+                    "错误",
+                    JOptionPane.ERROR_MESSAGE);
+            e.printStackTrace();
+        }
+        new DuplicateScanWorker(mainWindow).start();
+    }
+}
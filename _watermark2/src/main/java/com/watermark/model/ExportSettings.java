@@ -0,0 +1,32 @@
+package com.watermark.model;
+
+import lombok.Data;
+import java.io.Serializable;
+
+@Data
+public class ExportSettings implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // 输出格式：JPEG 或 PNG
+    private String outputFormat = "JPEG";
+
+    // 命名规则：original / prefix / suffix
+    private String namingRule = "original";
+    private String prefix = "";
+    private String suffix = "";
+
+    // JPEG质量 (0-100)
+    private int quality = 90;
+
+    // JPEG编码选项：优化Huffman表（文件更小、编码稍慢）、渐进式、色度抽样（4:2:0 / 4:2:2 / 4:4:4）
+    private boolean optimizeHuffman = false;
+    private boolean progressive = false;
+    private String chromaSubsampling = "4:2:0";
+
+    // JPEG源图导出为JPEG时只重新编码水印覆盖的块，其余部分无损保留。
+    // 沿用源文件的量化表和帧结构，上面的质量和编码选项都不起作用，所以需要显式开启
+    private boolean partialJpegReencode = false;
+
+    // 忽略导出文件夹中的导出清单，全部重新导出（默认只导出源文件、水印或编码设置有变化的图片）
+    private boolean forceRebuild = false;
+}
@@ -1,41 +1,111 @@
 package com.watermark.model;
 
+import com.watermark.utils.SourceImageCache;
+import com.watermark.utils.ThumbnailCache;
 import lombok.Data;
-import javax.swing.*;
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * 图片列表中的一项：只保存源文件引用和水印配方，不保存任何原始分辨率的像素。
+ * 缩略图由ThumbnailLoader按需生成并放入ThumbnailCache，完整的水印结果只在预览或导出时渲染。
+ */
 @Data
 public class ImageItem {
     private String name;
-    private ImageIcon icon;
     private File file;
+    // 导入时记录的文件修改时间，用作缩略图缓存键
+    private long lastModified;
+    // 导入时记录的文件大小，大小不同的文件不可能重复，不必计算内容哈希
+    private long fileSize;
+    // 递归导入文件夹时相对于所选文件夹的子文件夹路径，导出时在导出文件夹中重建；直接导入的文件为空字符串
+    private String relativeFolder = "";
+    // 文件内容的SHA-256（十六进制），只在列表中有同样大小的其他文件时计算，未计算时为null
+    private String contentHash;
+    // 与本条目内容完全相同的其他条目，导出时复用本条目的渲染结果，按各自的子文件夹和文件名写出
+    private final List<ImageItem> duplicates = new ArrayList<>();
+    // 水印配方版本号，每次设置新的配方后递增
+    private int revision;
+    // 水印配方，为null表示尚未添加水印
+    private WatermarkTemplate recipe;
+    // 图片水印配方使用的水印图片，同一批次的所有条目共享同一份
+    private BufferedImage watermarkImage;
 
-    public ImageItem(String name, ImageIcon icon, File file) {
+    public ImageItem(String name, File file) {
         this.name = name;
-        this.icon = icon;
         this.file = file;
+        this.lastModified = file != null ? file.lastModified() : 0L;
+        this.fileSize = file != null ? file.length() : 0L;
     }
 
-    public BufferedImage getBufferedImage() {
-        // 从ImageIcon创建BufferedImage
-        Image image = icon.getImage();
-        BufferedImage bufferedImage = new BufferedImage(
-                image.getWidth(null),
-                image.getHeight(null),
-                BufferedImage.TYPE_INT_ARGB
-        );
+    /**
+     * 遍历目录时已取得文件属性，不再单独查询文件系统
+     */
+    public ImageItem(String name, File file, long lastModified, long fileSize, String relativeFolder) {
+        this.name = name;
+        this.file = file;
+        this.lastModified = lastModified;
+        this.fileSize = fileSize;
+        this.relativeFolder = relativeFolder;
+    }
+
+    /**
+     * 把内容相同的另一个条目（及其已合并的重复文件）并入本条目，同一路径只保留一次
+     */
+    public void addDuplicate(ImageItem other) {
+        addDuplicateItem(other);
+        for (ImageItem duplicate : other.duplicates) {
+            addDuplicateItem(duplicate);
+        }
+    }
+
+    private void addDuplicateItem(ImageItem duplicate) {
+        if (isSameFile(duplicate)) {
+            return;
+        }
+        for (ImageItem existing : duplicates) {
+            if (existing.isSameFile(duplicate)) {
+                return;
+            }
+        }
+        duplicates.add(duplicate);
+    }
+
+    private boolean isSameFile(ImageItem other) {
+        return other.file.getAbsoluteFile().equals(file.getAbsoluteFile());
+    }
 
-        Graphics2D g2d = bufferedImage.createGraphics();
-        g2d.drawImage(image, 0, 0, null);
-        g2d.dispose();
+    /**
+     * 设置水印配方，文本水印配方的watermarkImage传null
+     */
+    public void setRecipe(WatermarkTemplate recipe, BufferedImage watermarkImage) {
+        this.recipe = recipe;
+        this.watermarkImage = watermarkImage;
+        this.revision++;
+    }
 
-        return bufferedImage;
+    public ThumbnailCache.Key getThumbnailKey() {
+        return new ThumbnailCache.Key(file.getAbsolutePath(), lastModified, revision);
+    }
+
+    /**
+     * 获取原始图片（不含水印），解码失败时返回null。
+     * 返回的是SourceImageCache中共享的图片，只能读取，不能在上面绘制
+     */
+    public BufferedImage getBufferedImage() {
+        try {
+            return SourceImageCache.getInstance().get(file);
+        } catch (IOException e) {
+            System.err.println("读取图片失败：" + file + " - " + e.getMessage());
+            return null;
+        }
     }
 
     @Override
     public String toString() {
         return name;
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package com.watermark.model;
 
 import lombok.Data;
+import lombok.ToString;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Point;
@@ -39,6 +40,44 @@ public class WatermarkTemplate implements Serializable {
     private WatermarkPosition position;
     private Point customPosition;
 
+    // 平铺参数：开启后水印按交错网格铺满整张图片，忽略位置设置
+    private boolean tiled = false;
+    private int tileSpacing = 100; // 相邻水印之间的间距（原图像素）
+    private boolean tileStagger = true; // 奇数行错开半个间距
+
+    // 由TextTokens按图片替换了变量的副本：每张图片的文字都可能不同，水印图章不放入共享缓存。
+    // 不保存到模板文件，也不参与比较和导出清单的配方哈希
+    @ToString.Exclude
+    private transient boolean perImage = false;
+
+    /**
+     * 复制模板的所有参数，用于按图片替换文字变量而不修改共享的配方
+     */
+    public WatermarkTemplate copy() {
+        WatermarkTemplate copy = new WatermarkTemplate();
+        copy.name = name;
+        copy.type = type;
+        copy.textWatermark = textWatermark;
+        copy.fontName = fontName;
+        copy.fontSize = fontSize;
+        copy.bold = bold;
+        copy.italic = italic;
+        copy.textColor = textColor;
+        copy.textOpacity = textOpacity;
+        copy.hasShadow = hasShadow;
+        copy.hasOutline = hasOutline;
+        copy.imagePath = imagePath;
+        copy.imageScale = imageScale;
+        copy.imageOpacity = imageOpacity;
+        copy.rotation = rotation;
+        copy.position = position;
+        copy.customPosition = customPosition != null ? new Point(customPosition) : null;
+        copy.tiled = tiled;
+        copy.tileSpacing = tileSpacing;
+        copy.tileStagger = tileStagger;
+        return copy;
+    }
+
     // 位置枚举（与WatermarkPreviewPanel.WatermarkPosition保持一致）
     public enum WatermarkPosition {
         TOP_LEFT, TOP_CENTER, TOP_RIGHT,
@@ -9,6 +9,11 @@ public class ExportSettingsDialog extends JDialog {
     private String prefix = "";
     private String suffix = "";
     private int quality = 90;
+    private boolean optimizeHuffman = false;
+    private boolean progressive = false;
+    private String chromaSubsampling = "4:2:0";
+    private boolean partialJpegReencode = false;
+    private boolean forceRebuild = false;
 
     private JRadioButton originalNameRadio;
     private JRadioButton prefixRadio;
@@ -17,6 +22,11 @@ public class ExportSettingsDialog extends JDialog {
     private JTextField suffixField;
     private JSlider qualitySlider;
     private JLabel qualityLabel;
+    private JCheckBox optimizeHuffmanCheckBox;
+    private JCheckBox progressiveCheckBox;
+    private JComboBox<String> subsamplingComboBox;
+    private JCheckBox partialReencodeCheckBox;
+    private JCheckBox forceRebuildCheckBox;
 
     public ExportSettingsDialog(Frame parent, String outputFormat) {
         super(parent, "导出设置", true);
@@ -56,6 +66,17 @@ public class ExportSettingsDialog extends JDialog {
         qualitySlider.setPaintTicks(true);
         qualitySlider.setPaintLabels(true);
         qualitySlider.setPreferredSize(new Dimension(250, 50));
+
+        // 编码选项：在文件大小与编码时间之间取舍
+        optimizeHuffmanCheckBox = new JCheckBox("优化Huffman表（文件更小，编码稍慢）", optimizeHuffman);
+        progressiveCheckBox = new JCheckBox("渐进式", progressive);
+        subsamplingComboBox = new JComboBox<>(new String[]{"4:2:0", "4:2:2", "4:4:4"});
+        subsamplingComboBox.setSelectedItem(chromaSubsampling);
+        subsamplingComboBox.setToolTipText("4:2:0文件最小，4:4:4保留完整的色彩细节");
+        partialReencodeCheckBox = new JCheckBox("JPEG源图只重新编码水印区域（其余部分无损，不使用上面的质量和编码选项）", partialJpegReencode);
+
+        // 增量导出：默认跳过导出文件夹中已是最新的图片
+        forceRebuildCheckBox = new JCheckBox("强制全部重新导出（默认跳过源图、水印和编码设置都没有变化的图片）", forceRebuild);
         
         // 根据输出格式决定是否显示质量设置
         qualityLabel.setVisible("JPEG".equals(outputFormat));
@@ -98,19 +119,36 @@ public class ExportSettingsDialog extends JDialog {
         namingPanel.add(suffixField, gbc);
 
         // 质量设置面板
-        JPanel qualityPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 10));
+        JPanel qualityPanel = new JPanel(new BorderLayout());
         qualityPanel.setBorder(BorderFactory.createCompoundBorder(
             BorderFactory.createTitledBorder("JPEG质量设置"),
             BorderFactory.createEmptyBorder(10, 10, 10, 10)
         ));
-        qualityPanel.add(qualityLabel);
-        qualityPanel.add(qualitySlider);
+        JPanel sliderPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 10));
+        sliderPanel.add(qualityLabel);
+        sliderPanel.add(qualitySlider);
+        qualityPanel.add(sliderPanel, BorderLayout.CENTER);
+        JPanel encoderPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        encoderPanel.add(optimizeHuffmanCheckBox);
+        encoderPanel.add(progressiveCheckBox);
+        encoderPanel.add(new JLabel("色度抽样:"));
+        encoderPanel.add(subsamplingComboBox);
+        JPanel optionsPanel = new JPanel(new GridLayout(0, 1));
+        optionsPanel.add(encoderPanel);
+        optionsPanel.add(partialReencodeCheckBox);
+        qualityPanel.add(optionsPanel, BorderLayout.SOUTH);
         qualityPanel.setVisible(qualityLabel.isVisible());
 
+        // 增量导出面板
+        JPanel incrementalPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        incrementalPanel.setBorder(BorderFactory.createTitledBorder("增量导出"));
+        incrementalPanel.add(forceRebuildCheckBox);
+
         // 主面板
         JPanel mainPanel = new JPanel(new BorderLayout(0, 10));
         mainPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-        mainPanel.add(namingPanel, BorderLayout.CENTER);
+        mainPanel.add(namingPanel, BorderLayout.NORTH);
+        mainPanel.add(incrementalPanel, BorderLayout.CENTER);
         mainPanel.add(qualityPanel, BorderLayout.SOUTH);
         add(mainPanel, BorderLayout.CENTER);
 
@@ -138,6 +176,11 @@ public class ExportSettingsDialog extends JDialog {
                 suffix = suffixField.getText();
             }
             quality = qualitySlider.getValue();
+            optimizeHuffman = optimizeHuffmanCheckBox.isSelected();
+            progressive = progressiveCheckBox.isSelected();
+            chromaSubsampling = (String) subsamplingComboBox.getSelectedItem();
+            partialJpegReencode = partialReencodeCheckBox.isSelected();
+            forceRebuild = forceRebuildCheckBox.isSelected();
             dispose();
         });
 
@@ -172,6 +215,19 @@ public class ExportSettingsDialog extends JDialog {
         qualitySlider.addChangeListener(e -> {
             qualityLabel.setText("图片质量: " + qualitySlider.getValue());
         });
+
+        // 局部重编码沿用源文件的编码参数，开启时质量和编码选项不起作用
+        partialReencodeCheckBox.addActionListener(e -> updateEncoderControls());
+        updateEncoderControls();
+    }
+
+    private void updateEncoderControls() {
+        boolean enabled = !partialReencodeCheckBox.isSelected();
+        qualityLabel.setEnabled(enabled);
+        qualitySlider.setEnabled(enabled);
+        optimizeHuffmanCheckBox.setEnabled(enabled);
+        progressiveCheckBox.setEnabled(enabled);
+        subsamplingComboBox.setEnabled(enabled);
     }
 
     public boolean isConfirmed() {
@@ -193,4 +249,24 @@ public class ExportSettingsDialog extends JDialog {
     public int getQuality() {
         return quality;
     }
+
+    public boolean isOptimizeHuffman() {
+        return optimizeHuffman;
+    }
+
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    public String getChromaSubsampling() {
+        return chromaSubsampling;
+    }
+
+    public boolean isPartialJpegReencode() {
+        return partialJpegReencode;
+    }
+
+    public boolean isForceRebuild() {
+        return forceRebuild;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+package com.watermark.ui;
+
+import com.watermark.model.ImageItem;
+import com.watermark.utils.ThumbnailLoader;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 图片列表：单元格尺寸固定，列表只绘制视口中的单元格。
+ * 跟踪视口中可见的条目范围，让缩略图加载器优先生成可见的缩略图并预取滚动方向上的下一屏，
+ * 已滚动离开的条目从加载队列中取消。
+ */
+public class ImageGallery extends JList<ImageItem> {
+    // 视口连续变化时合并为一次更新
+    private static final int VIEWPORT_UPDATE_DELAY = 50;
+
+    private final Timer viewportTimer;
+    private final ChangeListener viewportListener = e -> scheduleViewportUpdate();
+    private JViewport viewport;
+    private int lastFirstVisible = -1;
+
+    public ImageGallery(ImageListModel model) {
+        super(model);
+        setCellRenderer(new ImageListCellRenderer());
+        setLayoutOrientation(JList.HORIZONTAL_WRAP);
+        setVisibleRowCount(-1);
+        // 固定单元格尺寸，列表布局时不必对每个条目调用渲染器测量大小
+        setFixedCellWidth(ImageListCellRenderer.CELL_WIDTH);
+        setFixedCellHeight(ImageListCellRenderer.CELL_HEIGHT);
+
+        viewportTimer = new Timer(VIEWPORT_UPDATE_DELAY, e -> updateViewport());
+        viewportTimer.setRepeats(false);
+
+        // 导入或合并重复图片后可见范围内的条目会变化
+        model.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                scheduleViewportUpdate();
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                scheduleViewportUpdate();
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                scheduleViewportUpdate();
+            }
+        });
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        Container parent = getParent();
+        if (parent instanceof JViewport) {
+            viewport = (JViewport) parent;
+            viewport.addChangeListener(viewportListener);
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        if (viewport != null) {
+            viewport.removeChangeListener(viewportListener);
+            viewport = null;
+        }
+        viewportTimer.stop();
+        super.removeNotify();
+    }
+
+    private void scheduleViewportUpdate() {
+        viewportTimer.restart();
+    }
+
+    // 按当前可见范围和滚动方向更新缩略图加载队列
+    private void updateViewport() {
+        int first = getFirstVisibleIndex();
+        int last = getLastVisibleIndex();
+        if (first < 0 || last < first) {
+            return;
+        }
+        boolean forward = first >= lastFirstVisible;
+        lastFirstVisible = first;
+
+        // 预取滚动方向上的一屏
+        int screen = last - first + 1;
+        int aheadStart = forward ? last + 1 : Math.max(0, first - screen);
+        int aheadEnd = forward ? Math.min(getModel().getSize() - 1, last + screen) : first - 1;
+
+        List<ImageItem> visible = new ArrayList<>(screen);
+        for (int i = first; i <= last; i++) {
+            visible.add(getModel().getElementAt(i));
+        }
+        List<ImageItem> ahead = new ArrayList<>(screen);
+        if (forward) {
+            for (int i = aheadStart; i <= aheadEnd; i++) {
+                ahead.add(getModel().getElementAt(i));
+            }
+        } else {
+            // 向上滚动时离视口近的先生成
+            for (int i = aheadEnd; i >= aheadStart; i--) {
+                ahead.add(getModel().getElementAt(i));
+            }
+        }
+        ThumbnailLoader.getInstance().updateViewport(visible, ahead, this::repaint);
+    }
+}
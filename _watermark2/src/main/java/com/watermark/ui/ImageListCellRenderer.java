@@ -1,13 +1,21 @@
 package com.watermark.ui;
 
 import com.watermark.model.ImageItem;
+import com.watermark.utils.ThumbnailLoader;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 
 public class ImageListCellRenderer extends JPanel implements ListCellRenderer<ImageItem> {
+    // 单元格尺寸，列表按此固定尺寸布局
+    public static final int CELL_WIDTH = 150;
+    public static final int CELL_HEIGHT = 170;
+
     private JLabel imageLabel;
     private JLabel nameLabel;
+    // 复用同一个图标对象，绘制时不再为每个单元格分配新图标
+    private final ThumbnailIcon thumbnailIcon = new ThumbnailIcon();
 
     public ImageListCellRenderer() {
         setLayout(new BorderLayout(0, 5));
@@ -27,7 +35,7 @@ public class ImageListCellRenderer extends JPanel implements ListCellRenderer<Im
         add(nameLabel, BorderLayout.SOUTH);
         
         // 设置首选大小以确保一致的显示
-        setPreferredSize(new Dimension(150, 170));
+        setPreferredSize(new Dimension(CELL_WIDTH, CELL_HEIGHT));
     }
 
     @Override
@@ -38,16 +46,19 @@ public class ImageListCellRenderer extends JPanel implements ListCellRenderer<Im
                                                   boolean cellHasFocus) {
 
         if (value != null) {
-            nameLabel.setText(value.getName());
-
-            // 调整图片大小作为缩略图
-            ImageIcon originalIcon = value.getIcon();
-            if (originalIcon != null) {
-                Image img = originalIcon.getImage();
-                Image scaledImg = img.getScaledInstance(100, 100, Image.SCALE_SMOOTH);
-                imageLabel.setIcon(new ImageIcon(scaledImg));
+            // 合并了重复文件的条目显示重复的数量
+            int duplicates = value.getDuplicates().size();
+            nameLabel.setText(duplicates > 0 ? value.getName() + " (+" + duplicates + ")" : value.getName());
+
+            // 从缓存取已缩放好的缩略图，未命中时请求后台生成并显示占位文字
+            BufferedImage thumbnail = ThumbnailLoader.getInstance().request(value, list::repaint);
+            if (thumbnail != null) {
+                thumbnailIcon.setImage(thumbnail);
+                imageLabel.setIcon(thumbnailIcon);
+                imageLabel.setText(null);
             } else {
                 imageLabel.setIcon(null);
+                imageLabel.setText(ThumbnailLoader.getInstance().hasFailed(value) ? "无法预览" : "加载中...");
             }
         }
 
@@ -64,4 +75,30 @@ public class ImageListCellRenderer extends JPanel implements ListCellRenderer<Im
 
         return this;
     }
-}
\ No newline at end of file
+
+    // 直接绘制缓存中的缩略图，不经过ImageIcon的加载流程
+    private static class ThumbnailIcon implements Icon {
+        private BufferedImage image;
+
+        void setImage(BufferedImage image) {
+            this.image = image;
+        }
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            if (image != null) {
+                g.drawImage(image, x, y, null);
+            }
+        }
+
+        @Override
+        public int getIconWidth() {
+            return image != null ? image.getWidth() : 0;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return image != null ? image.getHeight() : 0;
+        }
+    }
+}
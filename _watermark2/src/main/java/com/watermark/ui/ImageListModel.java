@@ -0,0 +1,80 @@
+package com.watermark.ui;
+
+import com.watermark.model.ImageItem;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 图片列表的数据模型：支持批量追加和批量移除，一批条目只触发一次列表事件，
+ * 大量导入时列表不必为每张图片各处理一次事件。只能在事件线程中访问。
+ */
+public class ImageListModel extends AbstractListModel<ImageItem> {
+    private final List<ImageItem> items = new ArrayList<>();
+
+    @Override
+    public int getSize() {
+        return items.size();
+    }
+
+    @Override
+    public ImageItem getElementAt(int index) {
+        return items.get(index);
+    }
+
+    public void addElement(ImageItem item) {
+        items.add(item);
+        fireIntervalAdded(this, items.size() - 1, items.size() - 1);
+    }
+
+    /**
+     * 追加一批条目，只触发一次区间事件
+     */
+    public void addAll(Collection<? extends ImageItem> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        int first = items.size();
+        items.addAll(added);
+        fireIntervalAdded(this, first, items.size() - 1);
+    }
+
+    /**
+     * 移除一批条目（按对象身份比较）。被移除的条目之后的部分整体前移，
+     * 只触发一次内容变化事件和一次区间移除事件
+     */
+    public void removeAll(Collection<ImageItem> removed) {
+        if (removed.isEmpty()) {
+            return;
+        }
+        Set<ImageItem> targets = Collections.newSetFromMap(new IdentityHashMap<>());
+        targets.addAll(removed);
+
+        int oldSize = items.size();
+        int first = -1;
+        int kept = 0;
+        for (int i = 0; i < oldSize; i++) {
+            ImageItem item = items.get(i);
+            if (targets.contains(item)) {
+                if (first < 0) {
+                    first = i;
+                }
+            } else {
+                items.set(kept++, item);
+            }
+        }
+        if (first < 0) {
+            return;
+        }
+        items.subList(kept, oldSize).clear();
+        if (first < kept) {
+            fireContentsChanged(this, first, kept - 1);
+        }
+        fireIntervalRemoved(this, kept, oldSize - 1);
+    }
+}
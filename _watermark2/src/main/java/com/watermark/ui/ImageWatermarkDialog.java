@@ -30,6 +30,9 @@ public class ImageWatermarkDialog extends JDialog {
     private JSlider scaleSlider;
     private JSlider rotationSlider;
     private JComboBox<String> positionComboBox;
+    private JCheckBox tiledCheckBox;
+    private JSpinner tileSpacingSpinner;
+    private JCheckBox tileStaggerCheckBox;
     private WatermarkPreviewPanel previewPanel;
     
     // 模板管理控件
@@ -42,6 +45,9 @@ public class ImageWatermarkDialog extends JDialog {
     // 高级设置默认值
     private double rotation = 0.0; // 旋转角度
     private WatermarkPosition position = WatermarkPosition.BOTTOM_RIGHT;
+    private boolean tiled = false;
+    private int tileSpacing = 100; // 平铺间距（原图像素）
+    private boolean tileStagger = true;
 
     public ImageWatermarkDialog(Frame parent, ImageItem previewImage) {
         super(parent, "图片水印设置", true);
@@ -113,6 +119,13 @@ public class ImageWatermarkDialog extends JDialog {
         positionComboBox.setSelectedIndex(8); // 默认右下角
         positionComboBox.setPreferredSize(new Dimension(150, 30));
         
+        // 平铺设置
+        tiledCheckBox = new JCheckBox("平铺水印", tiled);
+        tileSpacingSpinner = new JSpinner(new SpinnerNumberModel(tileSpacing, 0, 2000, 10));
+        tileSpacingSpinner.setPreferredSize(new Dimension(80, 30));
+        tileStaggerCheckBox = new JCheckBox("交错排列", tileStagger);
+        updateTilingControls();
+        
         // 模板管理按钮
         saveTemplateButton = new JButton("保存为模板");
         saveTemplateButton.setPreferredSize(new Dimension(120, 35));
@@ -168,11 +181,24 @@ public class ImageWatermarkDialog extends JDialog {
         gbc.gridx = 1; gbc.gridwidth = 3;
         mainPanel.add(positionComboBox, gbc);
         
+        // 高级设置 - 平铺
+        gbc.gridx = 0; gbc.gridy = 5; gbc.gridwidth = 1;
+        mainPanel.add(new JLabel("平铺:"), gbc);
+        gbc.gridx = 1;
+        mainPanel.add(tiledCheckBox, gbc);
+        JPanel tileSpacingPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        tileSpacingPanel.add(new JLabel("间距:"));
+        tileSpacingPanel.add(tileSpacingSpinner);
+        gbc.gridx = 2;
+        mainPanel.add(tileSpacingPanel, gbc);
+        gbc.gridx = 3;
+        mainPanel.add(tileStaggerCheckBox, gbc);
+        
         // 模板管理按钮
         JPanel templateButtonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 10));
         templateButtonPanel.add(saveTemplateButton);
         templateButtonPanel.add(loadTemplateButton);
-        gbc.gridx = 0; gbc.gridy = 5; gbc.gridwidth = 4; // 从6改为5
+        gbc.gridx = 0; gbc.gridy = 6; gbc.gridwidth = 4;
         mainPanel.add(templateButtonPanel, gbc);
         
         // 创建包含主设置和预览的中间面板
@@ -212,6 +238,9 @@ public class ImageWatermarkDialog extends JDialog {
                     // 高级设置值
                     rotation = rotationSlider.getValue();
                     position = WatermarkPosition.values()[positionComboBox.getSelectedIndex()];
+                    tiled = tiledCheckBox.isSelected();
+                    tileSpacing = (Integer) tileSpacingSpinner.getValue();
+                    tileStagger = tileStaggerCheckBox.isSelected();
                     
                     dispose();
                 } else {
@@ -269,6 +298,13 @@ public class ImageWatermarkDialog extends JDialog {
             }
         });
         
+        tiledCheckBox.addActionListener(e -> {
+            updateTilingControls();
+            updatePreview(false); // 不强制更新位置
+        });
+        tileSpacingSpinner.addChangeListener(e -> updatePreview(false)); // 不强制更新位置
+        tileStaggerCheckBox.addActionListener(e -> updatePreview(false)); // 不强制更新位置
+        
         // 模板管理按钮事件
         saveTemplateButton.addActionListener(new ActionListener() {
             @Override
@@ -333,6 +369,14 @@ public class ImageWatermarkDialog extends JDialog {
         }
     }
     
+    // 平铺时位置设置不起作用，间距和交错只在平铺时可用
+    private void updateTilingControls() {
+        boolean selected = tiledCheckBox.isSelected();
+        positionComboBox.setEnabled(!selected);
+        tileSpacingSpinner.setEnabled(selected);
+        tileStaggerCheckBox.setEnabled(selected);
+    }
+    
     // 更新预览
     private void updatePreview() {
         updatePreview(false);
@@ -342,11 +386,19 @@ public class ImageWatermarkDialog extends JDialog {
     private void updatePreview(boolean forceUpdatePosition) {
         if (watermarkImage != null) {
             double previewScale = scaleSlider.getValue();
-            previewPanel.setWatermarkImage(watermarkImage);
-            previewPanel.setOpacity(watermarkOpacity);
-            previewPanel.setScale(previewScale / 100.0);
-            previewPanel.setRotation(rotation);
-            previewPanel.setPresetPosition(position);
+
+            // 合并为一次预览渲染，拖动滑块时先以草稿质量渲染
+            boolean draft = opacitySlider.getValueIsAdjusting() || scaleSlider.getValueIsAdjusting()
+                    || rotationSlider.getValueIsAdjusting();
+            previewPanel.updateWatermark(() -> {
+                previewPanel.setWatermarkImage(watermarkImage);
+                previewPanel.setOpacity(watermarkOpacity);
+                previewPanel.setScale(previewScale / 100.0);
+                previewPanel.setRotation(rotation);
+                previewPanel.setPresetPosition(position);
+                previewPanel.setTiling(tiledCheckBox.isSelected(), (Integer) tileSpacingSpinner.getValue(),
+                        tileStaggerCheckBox.isSelected());
+            }, draft);
             
             // 根据参数决定是否强制更新位置
             if (forceUpdatePosition) {
@@ -384,10 +436,14 @@ public class ImageWatermarkDialog extends JDialog {
             template.setImagePath(watermarkFile.getAbsolutePath());
         }
         template.setImageOpacity(opacitySlider.getValue());
+        template.setImageScale(scaleSlider.getValue());
         
         // 设置通用参数
         template.setRotation(rotationSlider.getValue());
         template.setPosition(com.watermark.model.WatermarkTemplate.WatermarkPosition.values()[positionComboBox.getSelectedIndex()]);
+        template.setTiled(tiledCheckBox.isSelected());
+        template.setTileSpacing((Integer) tileSpacingSpinner.getValue());
+        template.setTileStagger(tileStaggerCheckBox.isSelected());
         
         // 设置自定义位置（如果有的话）
         if (!previewPanel.isUsePresetPosition()) {
@@ -436,6 +492,7 @@ public class ImageWatermarkDialog extends JDialog {
         }
         
         opacitySlider.setValue(template.getImageOpacity());
+        scaleSlider.setValue((int) template.getImageScale());
         
         // 加载通用参数
         rotationSlider.setValue((int) template.getRotation());
@@ -444,6 +501,12 @@ public class ImageWatermarkDialog extends JDialog {
             positionComboBox.setSelectedIndex(template.getPosition().ordinal());
         }
         
+        // 未开启平铺的模板（包括旧版本保存的、没有平铺参数的模板）沿用默认的间距和交错设置
+        tiledCheckBox.setSelected(template.isTiled());
+        tileSpacingSpinner.setValue(template.isTiled() ? template.getTileSpacing() : tileSpacing);
+        tileStaggerCheckBox.setSelected(template.isTiled() ? template.isTileStagger() : tileStagger);
+        updateTilingControls();
+        
         // 加载自定义位置（如果有的话）
         if (template.getCustomPosition() != null) {
             previewPanel.setUsePresetPosition(false);
@@ -464,6 +527,10 @@ public class ImageWatermarkDialog extends JDialog {
         return watermarkImage;
     }
 
+    public File getWatermarkFile() {
+        return watermarkFile;
+    }
+
     public double getScale() {
         return scaleSlider.getValue(); // 返回预览缩放滑块的值
     }
@@ -481,6 +548,19 @@ public class ImageWatermarkDialog extends JDialog {
         return position;
     }
     
+    // 平铺设置相关getter方法
+    public boolean isTiled() {
+        return tiled;
+    }
+    
+    public int getTileSpacing() {
+        return tileSpacing;
+    }
+    
+    public boolean isTileStagger() {
+        return tileStagger;
+    }
+    
     // 获取水印位置
     public Point getWatermarkPosition() {
         // 如果使用预设位置，返回null，否则返回自定义位置
@@ -8,7 +8,7 @@ import java.awt.*;
 
 public class MainWindow {
     private JFrame frame;
-    private DefaultListModel<ImageItem> imageListModel;
+    private ImageListModel imageListModel;
     private JList<ImageItem> imageList;
     private ImageImportController imageImportController;
     private String outputFormat = "JPEG"; // 默认输出格式
@@ -26,11 +26,9 @@ public class MainWindow {
         frame.add(toolbarPanel, BorderLayout.NORTH);
 
         // 创建图片显示区域
-        imageListModel = new DefaultListModel<>();
-        imageList = new JList<>(imageListModel);
-        imageList.setCellRenderer(new ImageListCellRenderer());
-        imageList.setLayoutOrientation(JList.HORIZONTAL_WRAP);
-        imageList.setVisibleRowCount(-1);
+        imageListModel = new ImageListModel();
+        // 缩略图按视口中的可见范围优先生成
+        imageList = new ImageGallery(imageListModel);
 
         JScrollPane scrollPane = new JScrollPane(imageList);
         scrollPane.setPreferredSize(new Dimension(1200, 800));
@@ -119,7 +117,7 @@ public class MainWindow {
         return frame;
     }
 
-    public DefaultListModel<ImageItem> getImageListModel() {
+    public ImageListModel getImageListModel() {
         return imageListModel;
     }
     
@@ -0,0 +1,92 @@
+package com.watermark.ui;
+
+import javax.swing.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 预览渲染调度器：在后台线程中渲染预览，连续提交的参数只保留最新的一份。
+ * 正在渲染时到达的新参数会覆盖尚未开始的旧参数，渲染完成后若已有更新的提交则丢弃该帧，
+ * 只有最新一帧会在事件线程中交给回调。
+ *
+ * @param <S> 渲染参数快照，必须是不可变的
+ * @param <R> 渲染结果
+ */
+public class PreviewRenderScheduler<S, R> {
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "preview-render");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Function<S, R> renderer;
+    private final Consumer<R> onRendered;
+    private final AtomicReference<Job<S>> pending = new AtomicReference<>();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong latestGeneration = new AtomicLong();
+
+    /**
+     * renderer在后台线程中调用，onRendered在事件线程中调用
+     */
+    public PreviewRenderScheduler(Function<S, R> renderer, Consumer<R> onRendered) {
+        this.renderer = renderer;
+        this.onRendered = onRendered;
+    }
+
+    /**
+     * 提交新的渲染参数，覆盖尚未开始渲染的旧参数
+     */
+    public void submit(S state) {
+        pending.set(new Job<>(latestGeneration.incrementAndGet(), state));
+        if (running.compareAndSet(false, true)) {
+            EXECUTOR.execute(this::drain);
+        }
+    }
+
+    // 依次渲染最新的参数，直到没有新的提交
+    private void drain() {
+        while (true) {
+            Job<S> job = pending.getAndSet(null);
+            if (job == null) {
+                running.set(false);
+                // 在清除运行标记前后可能有新的提交到达
+                if (pending.get() != null && running.compareAndSet(false, true)) {
+                    continue;
+                }
+                return;
+            }
+
+            R result;
+            try {
+                result = renderer.apply(job.state);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                continue;
+            }
+
+            if (job.generation == latestGeneration.get()) {
+                SwingUtilities.invokeLater(() -> {
+                    // 交付前再次检查，事件线程排队期间可能又有新的提交
+                    if (job.generation == latestGeneration.get()) {
+                        onRendered.accept(result);
+                    }
+                });
+            }
+        }
+    }
+
+    private static class Job<S> {
+        private final long generation;
+        private final S state;
+
+        Job(long generation, S state) {
+            this.generation = generation;
+            this.state = state;
+        }
+    }
+}
@@ -2,7 +2,10 @@ package com.watermark.ui;
 
 import com.watermark.model.ImageItem;
 import com.watermark.ui.WatermarkPreviewPanel.WatermarkPosition;
+import com.watermark.utils.ExifReader;
 import com.watermark.utils.TemplateManager;
+import com.watermark.utils.TextTokens;
+import com.watermark.utils.WatermarkRenderer;
 
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
@@ -10,6 +13,7 @@ import javax.swing.event.ChangeListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
 
 public class TextWatermarkDialog extends JDialog {
     private boolean confirmed = false;
@@ -28,6 +32,9 @@ public class TextWatermarkDialog extends JDialog {
     // 高级设置控件
     private JSlider rotationSlider;
     private JComboBox<String> positionComboBox;
+    private JCheckBox tiledCheckBox;
+    private JSpinner tileSpacingSpinner;
+    private JCheckBox tileStaggerCheckBox;
     private WatermarkPreviewPanel previewPanel;
     
     // 模板管理控件
@@ -48,9 +55,18 @@ public class TextWatermarkDialog extends JDialog {
     // 高级设置默认值
     private double rotation = 0.0; // 旋转角度
     private WatermarkPosition position = WatermarkPosition.BOTTOM_RIGHT;
+    private boolean tiled = false;
+    private int tileSpacing = 100; // 平铺间距（原图像素）
+    private boolean tileStagger = true;
+    // 预览使用的图片，为null时预览中不替换变量
+    private final ImageItem previewImage;
+    // 预览图片的EXIF，水印文字第一次用到拍摄日期或相机时读取
+    private ExifReader.ExifData previewExif;
+    private boolean previewExifLoaded = false;
 
     public TextWatermarkDialog(Frame parent, ImageItem previewImage) {
         super(parent, "文本水印设置", true);
+        this.previewImage = previewImage;
         initializeComponents();
         layoutComponents();
         setupEventHandlers();
@@ -74,6 +90,7 @@ public class TextWatermarkDialog extends JDialog {
         // 文本水印内容
         textWatermarkField = new JTextField(watermarkText, 15);
         textWatermarkField.setPreferredSize(new Dimension(200, 30));
+        textWatermarkField.setToolTipText("可使用变量：{date} 拍摄日期，{camera} 相机型号，{filename} 文件名，{index} 序号");
         
         // 字体选择
         GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
@@ -135,6 +152,13 @@ public class TextWatermarkDialog extends JDialog {
         positionComboBox.setSelectedIndex(8); // 默认右下角
         positionComboBox.setPreferredSize(new Dimension(150, 30));
         
+        // 平铺设置
+        tiledCheckBox = new JCheckBox("平铺水印", tiled);
+        tileSpacingSpinner = new JSpinner(new SpinnerNumberModel(tileSpacing, 0, 2000, 10));
+        tileSpacingSpinner.setPreferredSize(new Dimension(80, 30));
+        tileStaggerCheckBox = new JCheckBox("交错排列", tileStagger);
+        updateTilingControls();
+        
         // 模板管理按钮
         saveTemplateButton = new JButton("保存为模板");
         saveTemplateButton.setPreferredSize(new Dimension(120, 35));
@@ -213,11 +237,24 @@ public class TextWatermarkDialog extends JDialog {
         gbc.gridx = 1; gbc.gridwidth = 3;
         mainPanel.add(positionComboBox, gbc);
         
+        // 高级设置 - 平铺
+        gbc.gridx = 0; gbc.gridy = 8; gbc.gridwidth = 1;
+        mainPanel.add(new JLabel("平铺:"), gbc);
+        gbc.gridx = 1;
+        mainPanel.add(tiledCheckBox, gbc);
+        JPanel tileSpacingPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        tileSpacingPanel.add(new JLabel("间距:"));
+        tileSpacingPanel.add(tileSpacingSpinner);
+        gbc.gridx = 2;
+        mainPanel.add(tileSpacingPanel, gbc);
+        gbc.gridx = 3;
+        mainPanel.add(tileStaggerCheckBox, gbc);
+        
         // 模板管理按钮
         JPanel templateButtonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 10));
         templateButtonPanel.add(saveTemplateButton);
         templateButtonPanel.add(loadTemplateButton);
-        gbc.gridx = 0; gbc.gridy = 8; gbc.gridwidth = 4;
+        gbc.gridx = 0; gbc.gridy = 9; gbc.gridwidth = 4;
         mainPanel.add(templateButtonPanel, gbc);
         
         // 创建包含主设置和预览的中间面板
@@ -256,6 +293,9 @@ public class TextWatermarkDialog extends JDialog {
                 // 高级设置值
                 rotation = rotationSlider.getValue();
                 position = WatermarkPosition.values()[positionComboBox.getSelectedIndex()];
+                tiled = tiledCheckBox.isSelected();
+                tileSpacing = (Integer) tileSpacingSpinner.getValue();
+                tileStagger = tileStaggerCheckBox.isSelected();
                 
                 // 保存当前会话
                 saveCurrentSession();
@@ -325,6 +365,13 @@ public class TextWatermarkDialog extends JDialog {
             }
         });
         
+        tiledCheckBox.addActionListener(e -> {
+            updateTilingControls();
+            updatePreview(false); // 不强制更新位置
+        });
+        tileSpacingSpinner.addChangeListener(e -> updatePreview(false)); // 不强制更新位置
+        tileStaggerCheckBox.addActionListener(e -> updatePreview(false)); // 不强制更新位置
+        
         // 模板管理按钮事件
         saveTemplateButton.addActionListener(new ActionListener() {
             @Override
@@ -341,6 +388,26 @@ public class TextWatermarkDialog extends JDialog {
         });
     }
     
+    // 平铺时位置设置不起作用，间距和交错只在平铺时可用
+    private void updateTilingControls() {
+        boolean selected = tiledCheckBox.isSelected();
+        positionComboBox.setEnabled(!selected);
+        tileSpacingSpinner.setEnabled(selected);
+        tileStaggerCheckBox.setEnabled(selected);
+    }
+    
+    private ExifReader.ExifData previewExif() {
+        if (!previewExifLoaded) {
+            previewExifLoaded = true;
+            try {
+                previewExif = ExifReader.read(previewImage.getFile());
+            } catch (IOException e) {
+                System.err.println("读取EXIF失败：" + previewImage.getFile() + " - " + e.getMessage());
+            }
+        }
+        return previewExif;
+    }
+
     // 更新预览
     private void updatePreview() {
         updatePreview(false);
@@ -348,31 +415,30 @@ public class TextWatermarkDialog extends JDialog {
     
     // 更新预览，forceUpdatePosition为true时强制更新位置
     private void updatePreview(boolean forceUpdatePosition) {
-        // 获取当前文本水印设置
+        // 获取当前文本水印设置，预览中的变量按预览图片替换，序号按第一张计
         String text = textWatermarkField.getText();
+        String previewText = previewImage != null
+                ? TextTokens.resolve(text, previewImage.getFile(), 1, TextTokens.needsExif(text) ? previewExif() : null)
+                : text;
         String fontName = (String) fontComboBox.getSelectedItem();
         int fontSize = (Integer) fontSizeSpinner.getValue();
         boolean isBold = boldCheckBox.isSelected();
         boolean isItalic = italicCheckBox.isSelected();
         
         // 创建字体
-        int fontStyle = Font.PLAIN;
-        if (isBold && isItalic) {
-            fontStyle = Font.BOLD | Font.ITALIC;
-        } else if (isBold) {
-            fontStyle = Font.BOLD;
-        } else if (isItalic) {
-            fontStyle = Font.ITALIC;
-        }
-        
-        Font font = new Font(fontName, fontStyle, fontSize);
-        
-        // 更新预览面板
-        previewPanel.setTextWatermark(text, font, textColor);
-        previewPanel.setOpacity(watermarkOpacity);
-        previewPanel.setScale(1.0); // 文本水印不支持缩放，使用默认值1.0
-        previewPanel.setRotation(rotation);
-        previewPanel.setPresetPosition(position);
+        Font font = WatermarkRenderer.createFont(fontName, fontSize, isBold, isItalic);
+
+        // 合并为一次预览渲染，拖动滑块时先以草稿质量渲染
+        boolean draft = opacitySlider.getValueIsAdjusting() || rotationSlider.getValueIsAdjusting();
+        previewPanel.updateWatermark(() -> {
+            previewPanel.setTextWatermark(previewText, font, textColor);
+            previewPanel.setOpacity(watermarkOpacity);
+            previewPanel.setScale(1.0); // 文本水印不支持缩放，使用默认值1.0
+            previewPanel.setRotation(rotation);
+            previewPanel.setPresetPosition(position);
+            previewPanel.setTiling(tiledCheckBox.isSelected(), (Integer) tileSpacingSpinner.getValue(),
+                    tileStaggerCheckBox.isSelected());
+        }, draft);
         
         // 根据参数决定是否强制更新位置
         if (forceUpdatePosition) {
@@ -413,6 +479,9 @@ public class TextWatermarkDialog extends JDialog {
         // 设置通用参数
         template.setRotation(rotationSlider.getValue());
         template.setPosition(com.watermark.model.WatermarkTemplate.WatermarkPosition.values()[positionComboBox.getSelectedIndex()]);
+        template.setTiled(tiledCheckBox.isSelected());
+        template.setTileSpacing((Integer) tileSpacingSpinner.getValue());
+        template.setTileStagger(tileStaggerCheckBox.isSelected());
         
         // 设置自定义位置（如果有的话）
         if (!previewPanel.isUsePresetPosition()) {
@@ -471,6 +540,12 @@ public class TextWatermarkDialog extends JDialog {
             positionComboBox.setSelectedIndex(template.getPosition().ordinal());
         }
         
+        // 未开启平铺的模板（包括旧版本保存的、没有平铺参数的模板）沿用默认的间距和交错设置
+        tiledCheckBox.setSelected(template.isTiled());
+        tileSpacingSpinner.setValue(template.isTiled() ? template.getTileSpacing() : tileSpacing);
+        tileStaggerCheckBox.setSelected(template.isTiled() ? template.isTileStagger() : tileStagger);
+        updateTilingControls();
+        
         // 加载自定义位置（如果有的话）
         if (template.getCustomPosition() != null) {
             previewPanel.setUsePresetPosition(false);
@@ -510,6 +585,9 @@ public class TextWatermarkDialog extends JDialog {
         // 设置通用参数
         template.setRotation(rotationSlider.getValue());
         template.setPosition(com.watermark.model.WatermarkTemplate.WatermarkPosition.values()[positionComboBox.getSelectedIndex()]);
+        template.setTiled(tiledCheckBox.isSelected());
+        template.setTileSpacing((Integer) tileSpacingSpinner.getValue());
+        template.setTileStagger(tileStaggerCheckBox.isSelected());
         
         // 设置自定义位置（如果有的话）
         if (!previewPanel.isUsePresetPosition()) {
@@ -568,6 +646,19 @@ public class TextWatermarkDialog extends JDialog {
         return position;
     }
     
+    // 平铺设置相关getter方法
+    public boolean isTiled() {
+        return tiled;
+    }
+    
+    public int getTileSpacing() {
+        return tileSpacing;
+    }
+    
+    public boolean isTileStagger() {
+        return tileStagger;
+    }
+    
     // 获取水印位置
     public Point getWatermarkPosition() {
         // 如果使用预设位置，返回null，否则返回自定义位置
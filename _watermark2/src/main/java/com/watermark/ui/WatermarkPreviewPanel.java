@@ -1,14 +1,19 @@
 package com.watermark.ui;
 
 import com.watermark.model.ImageItem;
+import com.watermark.utils.ImagePyramid;
+import com.watermark.utils.WatermarkStamp;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.awt.event.MouseMotionAdapter;
+import java.awt.event.MouseWheelEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class WatermarkPreviewPanel extends JPanel {
     private ImageItem imageItem;
@@ -25,8 +30,49 @@ public class WatermarkPreviewPanel extends JPanel {
     private boolean isDragging = false;
     private WatermarkPosition presetPosition = WatermarkPosition.BOTTOM_RIGHT; // 默认位置
     private boolean usePresetPosition = true; // 是否使用预设位置
+    // 平铺模式：水印按交错网格铺满整张图片，此时不能拖拽单个水印
+    private boolean tiled = false;
+    private int tileSpacing = 100; // 原图像素
+    private boolean tileStagger = true;
     private int imageX, imageY, imageWidth, imageHeight; // 图像在面板中的位置和尺寸
 
+    // 缩放与平移：zoom为相对“适应面板”的倍数，panX/panY为平移偏移（面板像素）
+    private static final double MAX_DISPLAY_SCALE = 8.0;
+    private double zoom = 1.0;
+    private double displayScale = 1.0; // 原图坐标到面板坐标的比例
+    private int panX = 0, panY = 0;
+    private Point panStartPoint;
+    private int panStartX, panStartY;
+    private boolean isPanning = false;
+
+    // 图片金字塔和分块渲染缓存：只渲染可见的块，缩放比例不变时直接复用
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_CACHED_TILES = 64;
+    private ImagePyramid pyramid;
+    private WeakReference<BufferedImage> pyramidSource = new WeakReference<>(null);
+    private double tileScale = -1;
+    // 底图层：按面板分辨率缓存已合成的图块，拖拽水印时只需局部复制；视图变化时重建
+    private BufferedImage baseLayer;
+    private WeakReference<BufferedImage> baseLayerSource = new WeakReference<>(null);
+    private double baseLayerScale = -1;
+    private int baseLayerX, baseLayerY;
+    // 最近一次绘制的水印外形（面板坐标，已旋转），用于命中测试和局部重绘
+    private Shape watermarkShape;
+    // 水印层：在后台线程中渲染好的水印图片，拖拽时只改变绘制位置
+    private final PreviewRenderScheduler<LayerState, WatermarkLayer> layerScheduler =
+            new PreviewRenderScheduler<>(WatermarkPreviewPanel::renderWatermarkLayer, this::watermarkLayerRendered);
+    private WatermarkLayer watermarkLayer;
+    private LayerState scheduledLayer;
+    private boolean batchUpdating = false;
+    // 文本水印在原图坐标中的尺寸，设置文本时计算一次
+    private int textWidth, textHeight;
+    private final LinkedHashMap<Point, BufferedImage> tileCache = new LinkedHashMap<Point, BufferedImage>(MAX_CACHED_TILES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Point, BufferedImage> eldest) {
+            return size() > MAX_CACHED_TILES;
+        }
+    };
+
     // 水印位置枚举（九宫格）
     public enum WatermarkPosition {
         TOP_LEFT, TOP_CENTER, TOP_RIGHT,
@@ -44,8 +90,10 @@ public class WatermarkPreviewPanel extends JPanel {
                 BorderFactory.createEmptyBorder(10, 10, 10, 10)
         ));
 
-        // 添加鼠标事件监听器以支持拖拽
-        addMouseListener(new MouseAdapter() {
+        setToolTipText("滚轮缩放，双击在适应窗口与100%之间切换，拖动空白处平移");
+
+        // 添加鼠标事件监听器以支持拖拽水印和平移图片
+        MouseAdapter mouseHandler = new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
                 if (imageItem != null && (watermarkImage != null || textWatermark != null)) {
@@ -55,79 +103,117 @@ public class WatermarkPreviewPanel extends JPanel {
                         dragStartPoint = e.getPoint();
                         watermarkStartPoint = new Point(watermarkPosition);
                         usePresetPosition = false; // 开始拖拽后不再使用预设位置
+                        return;
                     }
                 }
+                if (imageItem != null) {
+                    isPanning = true;
+                    panStartPoint = e.getPoint();
+                    panStartX = panX;
+                    panStartY = panY;
+                }
             }
 
             @Override
             public void mouseReleased(MouseEvent e) {
                 isDragging = false;
+                isPanning = false;
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && imageItem != null) {
+                    toggleActualSize(e.getPoint());
+                }
             }
-        });
 
-        addMouseMotionListener(new MouseMotionAdapter() {
             @Override
             public void mouseDragged(MouseEvent e) {
                 if (isDragging && imageItem != null) {
-                    BufferedImage image = imageItem.getBufferedImage();
-                    if (image != null) {
-                        // 计算图像在面板上的缩放比例
-                        double panelScale = Math.min((double) getWidth() / image.getWidth(), (double) getHeight() / image.getHeight());
-
-                        // 计算拖拽偏移量（面板坐标）
-                        int dx = e.getX() - dragStartPoint.x;
-                        int dy = e.getY() - dragStartPoint.y;
-
-                        // 将面板坐标偏移量转换为原始图像坐标偏移量
-                        int imageDx = (int) (dx / panelScale);
-                        int imageDy = (int) (dy / panelScale);
-
-                        // 更新水印位置（原始图像坐标）
-                        watermarkPosition.x = watermarkStartPoint.x + imageDx;
-                        watermarkPosition.y = watermarkStartPoint.y + imageDy;
-                        repaint();
-                    }
+                    // 计算拖拽偏移量（面板坐标），按下时的命中测试已更新过显示比例
+                    int dx = e.getX() - dragStartPoint.x;
+                    int dy = e.getY() - dragStartPoint.y;
+
+                    // 将面板坐标偏移量转换为原始图像坐标偏移量
+                    int imageDx = (int) (dx / displayScale);
+                    int imageDy = (int) (dy / displayScale);
+
+                    // 更新水印位置（原始图像坐标），只重绘水印新旧位置的并集
+                    Rectangle oldBounds = watermarkShape != null ? watermarkShape.getBounds() : null;
+                    watermarkPosition.x = watermarkStartPoint.x + imageDx;
+                    watermarkPosition.y = watermarkStartPoint.y + imageDy;
+                    watermarkShape = computeWatermarkShape();
+                    repaintWatermark(oldBounds);
+                } else if (isPanning) {
+                    panX = panStartX + e.getX() - panStartPoint.x;
+                    panY = panStartY + e.getY() - panStartPoint.y;
+                    repaint();
+                }
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (imageItem != null) {
+                    zoomAt(e.getPoint(), e.getWheelRotation() < 0 ? 1.25 : 0.8);
                 }
             }
-        });
+        };
+        addMouseListener(mouseHandler);
+        addMouseMotionListener(mouseHandler);
+        addMouseWheelListener(mouseHandler);
     }
 
-    // 检查点击点是否在水印上
+    // 检查点击点是否在水印上（按旋转后的外形判断）
     private boolean isPointOnWatermark(Point point) {
-        if (imageItem == null) return false;
+        if (imageItem == null || tiled) return false;
 
-        BufferedImage image = imageItem.getBufferedImage();
-        if (image == null) return false;
+        if (watermarkShape == null) {
+            BufferedImage image = imageItem.getBufferedImage();
+            if (image == null) return false;
+            updateView(image);
+            calculateWatermarkPosition(image.getWidth(), image.getHeight());
+            watermarkShape = computeWatermarkShape();
+        }
+        return watermarkShape != null && watermarkShape.contains(point);
+    }
 
-        // 获取水印尺寸
-        int watermarkWidth, watermarkHeight;
+    // 计算水印在原图坐标中的尺寸，没有水印时返回null
+    private Dimension getWatermarkSize() {
         if (watermarkImage != null) {
-            watermarkWidth = (int) (watermarkImage.getWidth() * scale);
-            watermarkHeight = (int) (watermarkImage.getHeight() * scale);
-        } else if (textWatermark != null && textFont != null) {
-            FontMetrics fm = getFontMetrics(textFont);
-            watermarkWidth = fm.stringWidth(textWatermark);
-            watermarkHeight = fm.getHeight();
-        } else {
-            return false;
+            return new Dimension((int) (watermarkImage.getWidth() * scale), (int) (watermarkImage.getHeight() * scale));
+        } else if (textWatermark != null && textFont != null && textColor != null) {
+            return new Dimension(textWidth, textHeight);
         }
+        return null;
+    }
 
-        // 计算图像在面板上的缩放比例
-        double panelScale = Math.min((double) getWidth() / image.getWidth(), (double) getHeight() / image.getHeight());
-        int scaledImageWidth = (int) (image.getWidth() * panelScale);
-        int scaledImageHeight = (int) (image.getHeight() * panelScale);
-        int x = (getWidth() - scaledImageWidth) / 2;
-        int y = (getHeight() - scaledImageHeight) / 2;
-
-        // 计算水印在面板上的位置和尺寸
-        int scaledWatermarkX = x + (int) (watermarkPosition.x * panelScale);
-        int scaledWatermarkY = y + (int) (watermarkPosition.y * panelScale);
-        int scaledWatermarkWidth = (int) (watermarkWidth * panelScale);
-        int scaledWatermarkHeight = (int) (watermarkHeight * panelScale);
+    // 计算水印在面板上旋转后的外形
+    private Shape computeWatermarkShape() {
+        Dimension size = getWatermarkSize();
+        if (size == null) {
+            return null;
+        }
+        int scaledX = imageX + (int) (watermarkPosition.x * displayScale);
+        int scaledY = imageY + (int) (watermarkPosition.y * displayScale);
+        int scaledWidth = (int) (size.width * displayScale);
+        int scaledHeight = (int) (size.height * displayScale);
+        Rectangle rect = new Rectangle(scaledX, scaledY, scaledWidth, scaledHeight);
+        return AffineTransform.getRotateInstance(rotation, scaledX + scaledWidth / 2.0, scaledY + scaledHeight / 2.0)
+                .createTransformedShape(rect);
+    }
 
-        // 检查点是否在水印矩形内
-        return point.x >= scaledWatermarkX && point.x <= scaledWatermarkX + scaledWatermarkWidth &&
-                point.y >= scaledWatermarkY && point.y <= scaledWatermarkY + scaledWatermarkHeight;
+    // 重绘水印旧位置与新位置的并集，留出抗锯齿边缘
+    private void repaintWatermark(Rectangle oldBounds) {
+        Rectangle dirty = watermarkShape != null ? watermarkShape.getBounds() : null;
+        if (oldBounds != null) {
+            dirty = dirty != null ? dirty.union(oldBounds) : oldBounds;
+        }
+        if (dirty == null) {
+            repaint();
+            return;
+        }
+        dirty.grow(4, 4);
+        repaint(dirty);
     }
 
     @Override
@@ -144,73 +230,35 @@ public class WatermarkPreviewPanel extends JPanel {
         if (imageItem != null) {
             BufferedImage image = imageItem.getBufferedImage();
             if (image != null) {
-                int panelWidth = getWidth();
-                int panelHeight = getHeight();
                 int originalImageWidth = image.getWidth();
                 int originalImageHeight = image.getHeight();
 
-                // 计算缩放比例以适应面板
-                double panelScale = Math.min((double) panelWidth / originalImageWidth, (double) panelHeight / originalImageHeight);
-                imageWidth = (int) (originalImageWidth * panelScale);
-                imageHeight = (int) (originalImageHeight * panelScale);
-                imageX = (panelWidth - imageWidth) / 2;
-                imageY = (panelHeight - imageHeight) / 2;
-
-                // 绘制图片
-                g2d.drawImage(image, imageX, imageY, imageWidth, imageHeight, null);
+                // 底图层只在视图变化时重建，其余时候按裁剪区域复制
+                updateView(image);
+                ensureBaseLayer(image);
+                g2d.drawImage(baseLayer, 0, 0, null);
 
                 // 如果有水印，则绘制水印
-                if (watermarkImage != null || (textWatermark != null && textFont != null && textColor != null)) {
+                if (getWatermarkSize() != null) {
                     // 计算水印在原始图像上的位置
                     calculateWatermarkPosition(originalImageWidth, originalImageHeight);
+                    watermarkShape = computeWatermarkShape();
 
-                    // 应用缩放
-                    int scaledX = imageX + (int) (watermarkPosition.x * panelScale);
-                    int scaledY = imageY + (int) (watermarkPosition.y * panelScale);
-                    int scaledWatermarkWidth, scaledWatermarkHeight;
-
-                    if (watermarkImage != null) {
-                        scaledWatermarkWidth = (int) (watermarkImage.getWidth() * this.scale * panelScale);
-                        scaledWatermarkHeight = (int) (watermarkImage.getHeight() * this.scale * panelScale);
-                    } else {
-                        FontMetrics fm = g2d.getFontMetrics(textFont);
-                        scaledWatermarkWidth = (int) (fm.stringWidth(textWatermark) * panelScale);
-                        scaledWatermarkHeight = (int) (fm.getHeight() * panelScale);
+                    // 显示比例变化（缩放、调整面板大小）后按新比例重新渲染水印层
+                    if (scheduledLayer == null || scheduledLayer.displayScale != displayScale) {
+                        scheduleWatermarkLayer(false);
                     }
 
-                    // 保存原始变换
-                    AffineTransform originalTransform = g2d.getTransform();
-
-                    // 移动到水印中心点并应用旋转
-                    double centerX = scaledX + scaledWatermarkWidth / 2.0;
-                    double centerY = scaledY + scaledWatermarkHeight / 2.0;
-                    g2d.rotate(rotation, centerX, centerY);
-
-                    // 绘制水印
-                    if (watermarkImage != null) {
-                        // 设置透明度
-                        if (opacity < 100) {
-                            float alpha = opacity / 100.0f;
-                            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
-                        }
-
-                        g2d.drawImage(watermarkImage, scaledX, scaledY,
-                                scaledX + scaledWatermarkWidth, scaledY + scaledWatermarkHeight,
-                                0, 0, watermarkImage.getWidth(), watermarkImage.getHeight(), null);
-                    } else if (textWatermark != null) {
-                        // 设置透明度
-                        if (opacity < 100) {
-                            float alpha = opacity / 100.0f;
-                            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
-                        }
-
-                        g2d.setFont(textFont.deriveFont((float)(textFont.getSize() * panelScale)));
-                        g2d.setColor(textColor);
-                        g2d.drawString(textWatermark, scaledX, scaledY + g2d.getFontMetrics().getAscent());
+                    // 新的水印层渲染完成前先显示上一帧
+                    if (watermarkLayer != null && watermarkLayer.pattern != null) {
+                        paintTiledLayer(g2d);
+                    } else if (watermarkLayer != null) {
+                        int scaledX = imageX + (int) (watermarkPosition.x * displayScale);
+                        int scaledY = imageY + (int) (watermarkPosition.y * displayScale);
+                        g2d.drawImage(watermarkLayer.image, scaledX + watermarkLayer.offsetX, scaledY + watermarkLayer.offsetY, null);
                     }
-
-                    // 恢复原始变换
-                    g2d.setTransform(originalTransform);
+                } else {
+                    watermarkShape = null;
                 }
             }
         } else {
@@ -228,20 +276,174 @@ public class WatermarkPreviewPanel extends JPanel {
         g2d.dispose();
     }
 
-    // 计算水印在原始图像上的位置
-    private void calculateWatermarkPosition(int imageWidth, int imageHeight) {
-        int watermarkWidth, watermarkHeight;
+    // 用水印层的平铺图案填充图片区域，网格以图片中心为基准，与导出结果一致
+    private void paintTiledLayer(Graphics2D g2d) {
+        BufferedImage pattern = watermarkLayer.pattern;
+        int originX = imageX + (imageWidth - watermarkLayer.image.getWidth()) / 2;
+        int originY = imageY + (imageHeight - watermarkLayer.image.getHeight()) / 2;
+        g2d.clipRect(imageX, imageY, imageWidth, imageHeight);
+        g2d.setPaint(new TexturePaint(pattern, new Rectangle(originX, originY, pattern.getWidth(), pattern.getHeight())));
+        g2d.fillRect(imageX, imageY, imageWidth, imageHeight);
+    }
 
-        if (watermarkImage != null) {
-            watermarkWidth = (int) (watermarkImage.getWidth() * scale);
-            watermarkHeight = (int) (watermarkImage.getHeight() * scale);
-        } else if (textWatermark != null && textFont != null) {
-            FontMetrics fm = getFontMetrics(textFont);
-            watermarkWidth = fm.stringWidth(textWatermark);
-            watermarkHeight = fm.getHeight();
+    // 根据面板尺寸、缩放和平移计算图片在面板中的位置，缩放比例变化时清空图块缓存
+    private void updateView(BufferedImage image) {
+        if (pyramidSource.get() != image) {
+            pyramid = new ImagePyramid(image);
+            pyramidSource = new WeakReference<>(image);
+            tileCache.clear();
+            tileScale = -1;
+        }
+
+        double fitScale = Math.min((double) getWidth() / image.getWidth(), (double) getHeight() / image.getHeight());
+        displayScale = fitScale * zoom;
+        if (displayScale != tileScale) {
+            tileCache.clear();
+            tileScale = displayScale;
+        }
+
+        imageWidth = (int) (image.getWidth() * displayScale);
+        imageHeight = (int) (image.getHeight() * displayScale);
+
+        // 图片小于面板时居中，大于面板时限制平移范围，不让图片移出面板
+        panX = imageWidth <= getWidth() ? 0 : clamp(panX, (getWidth() - imageWidth) / 2, (imageWidth - getWidth()) / 2);
+        panY = imageHeight <= getHeight() ? 0 : clamp(panY, (getHeight() - imageHeight) / 2, (imageHeight - getHeight()) / 2);
+        imageX = (getWidth() - imageWidth) / 2 + panX;
+        imageY = (getHeight() - imageHeight) / 2 + panY;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    // 按当前视图重建底图层：背景加上所有可见图块
+    private void ensureBaseLayer(BufferedImage image) {
+        boolean sizeChanged = baseLayer == null || baseLayer.getWidth() != getWidth() || baseLayer.getHeight() != getHeight();
+        if (!sizeChanged && baseLayerSource.get() == image && baseLayerScale == displayScale
+                && baseLayerX == imageX && baseLayerY == imageY) {
+            return;
+        }
+
+        if (sizeChanged) {
+            GraphicsConfiguration config = getGraphicsConfiguration();
+            baseLayer = config != null
+                    ? config.createCompatibleImage(Math.max(1, getWidth()), Math.max(1, getHeight()))
+                    : new BufferedImage(Math.max(1, getWidth()), Math.max(1, getHeight()), BufferedImage.TYPE_INT_RGB);
+        }
+        Graphics2D g2d = baseLayer.createGraphics();
+        g2d.setColor(getBackground());
+        g2d.fillRect(0, 0, baseLayer.getWidth(), baseLayer.getHeight());
+        paintTiles(g2d, image);
+        g2d.dispose();
+
+        baseLayerSource = new WeakReference<>(image);
+        baseLayerScale = displayScale;
+        baseLayerX = imageX;
+        baseLayerY = imageY;
+    }
+
+    // 绘制与裁剪区域相交的图块，缺失的图块从最接近的金字塔层级渲染
+    private void paintTiles(Graphics2D g2d, BufferedImage image) {
+        Rectangle clip = g2d.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        Rectangle visible = clip.intersection(new Rectangle(imageX, imageY, imageWidth, imageHeight));
+        if (visible.isEmpty()) {
+            return;
+        }
+
+        int firstColumn = (visible.x - imageX) / TILE_SIZE;
+        int lastColumn = (visible.x + visible.width - 1 - imageX) / TILE_SIZE;
+        int firstRow = (visible.y - imageY) / TILE_SIZE;
+        int lastRow = (visible.y + visible.height - 1 - imageY) / TILE_SIZE;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Point key = new Point(column, row);
+                BufferedImage tile = tileCache.get(key);
+                if (tile == null) {
+                    tile = renderTile(image, column, row);
+                    tileCache.put(key, tile);
+                }
+                g2d.drawImage(tile, imageX + column * TILE_SIZE, imageY + row * TILE_SIZE, null);
+            }
+        }
+    }
+
+    private BufferedImage renderTile(BufferedImage image, int column, int row) {
+        int tileWidth = Math.min(TILE_SIZE, imageWidth - column * TILE_SIZE);
+        int tileHeight = Math.min(TILE_SIZE, imageHeight - row * TILE_SIZE);
+        BufferedImage tile = new BufferedImage(tileWidth, tileHeight,
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+
+        int level = pyramid.levelFor(displayScale);
+        BufferedImage levelImage = pyramid.getLevel(level, image);
+
+        Graphics2D g2d = tile.createGraphics();
+        // 缩小时双线性插值；放大查看细节时使用最近邻，保留原始像素
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, displayScale < 1.0
+                ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2d.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+        g2d.scale((double) imageWidth / levelImage.getWidth(), (double) imageHeight / levelImage.getHeight());
+        g2d.drawImage(levelImage, 0, 0, null);
+        g2d.dispose();
+        return tile;
+    }
+
+    // 以指定点为中心缩放，缩放后该点下的图片内容保持不动
+    private void zoomAt(Point point, double factor) {
+        BufferedImage image = imageItem.getBufferedImage();
+        if (image == null) {
+            return;
+        }
+        updateView(image);
+        double fitScale = displayScale / zoom;
+        double newZoom = Math.max(1.0, Math.min(zoom * factor, MAX_DISPLAY_SCALE / fitScale));
+        if (newZoom == zoom) {
+            return;
+        }
+
+        double imagePointX = (point.x - imageX) / displayScale;
+        double imagePointY = (point.y - imageY) / displayScale;
+        zoom = newZoom;
+        updateView(image);
+        panX += (int) Math.round(point.x - (imageX + imagePointX * displayScale));
+        panY += (int) Math.round(point.y - (imageY + imagePointY * displayScale));
+        repaint();
+    }
+
+    // 在适应面板与原始尺寸（100%）之间切换
+    private void toggleActualSize(Point point) {
+        BufferedImage image = imageItem.getBufferedImage();
+        if (image == null) {
+            return;
+        }
+        updateView(image);
+        double fitScale = displayScale / zoom;
+        if (zoom > 1.0) {
+            zoomToFit();
         } else {
+            zoomAt(point, 1.0 / fitScale);
+        }
+    }
+
+    // 恢复为适应面板显示
+    public void zoomToFit() {
+        zoom = 1.0;
+        panX = 0;
+        panY = 0;
+        repaint();
+    }
+
+    // 计算水印在原始图像上的位置
+    private void calculateWatermarkPosition(int imageWidth, int imageHeight) {
+        Dimension size = getWatermarkSize();
+        if (size == null) {
             return;
         }
+        int watermarkWidth = size.width;
+        int watermarkHeight = size.height;
 
         // 如果正在拖拽或者已经手动设置了位置，则使用当前位置，否则使用预设位置
         if (isDragging || !usePresetPosition) {
@@ -281,16 +483,100 @@ public class WatermarkPreviewPanel extends JPanel {
         }
     }
 
+    /**
+     * 批量修改水印参数：changes中调用的设置方法不会各自触发渲染，结束后只提交一次。
+     * draft为true时（如滑块拖动中）以草稿质量渲染，停止后应再以完整质量提交一次
+     */
+    public void updateWatermark(Runnable changes, boolean draft) {
+        batchUpdating = true;
+        try {
+            changes.run();
+        } finally {
+            batchUpdating = false;
+        }
+        scheduleWatermarkLayer(draft);
+        repaint();
+    }
+
+    // 水印外观参数变化后重新渲染水印层，批量修改期间推迟到结束时
+    private void watermarkChanged() {
+        if (!batchUpdating) {
+            scheduleWatermarkLayer(false);
+            repaint();
+        }
+    }
+
+    // 拍下当前参数快照，提交到后台渲染
+    private void scheduleWatermarkLayer(boolean draft) {
+        Dimension size = getWatermarkSize();
+        if (size == null) {
+            scheduledLayer = null;
+            watermarkLayer = null;
+            return;
+        }
+        scheduledLayer = new LayerState(watermarkImage, textWatermark, textFont, textColor,
+                size.width, size.height, opacity, rotation, displayScale, draft,
+                tiled, tileSpacing, tileStagger);
+        layerScheduler.submit(scheduledLayer);
+    }
+
+    // 在后台线程中把水印按显示比例、旋转和透明度渲染到独立的图层上
+    private static WatermarkLayer renderWatermarkLayer(LayerState state) {
+        int scaledWidth = Math.max(1, (int) (state.width * state.displayScale));
+        int scaledHeight = Math.max(1, (int) (state.height * state.displayScale));
+        Rectangle bounds = AffineTransform.getRotateInstance(state.rotation, scaledWidth / 2.0, scaledHeight / 2.0)
+                .createTransformedShape(new Rectangle(0, 0, scaledWidth, scaledHeight)).getBounds();
+        bounds.grow(1, 1);
+
+        BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        if (state.draft) {
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        } else {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        g2d.translate(-bounds.x, -bounds.y);
+        g2d.rotate(state.rotation, scaledWidth / 2.0, scaledHeight / 2.0);
+
+        // 设置透明度
+        if (state.opacity < 100) {
+            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, state.opacity / 100.0f));
+        }
+
+        // 绘制水印
+        if (state.watermarkImage != null) {
+            g2d.drawImage(state.watermarkImage, 0, 0, scaledWidth, scaledHeight, null);
+        } else {
+            g2d.setFont(state.textFont.deriveFont((float) (state.textFont.getSize() * state.displayScale)));
+            g2d.setColor(state.textColor);
+            g2d.drawString(state.text, 0, g2d.getFontMetrics().getAscent());
+        }
+        g2d.dispose();
+
+        // 平铺模式下同时在后台合成按显示比例缩放间距的平铺图案
+        BufferedImage pattern = state.tiled
+                ? WatermarkStamp.createPattern(image, (int) Math.round(state.tileSpacing * state.displayScale), state.tileStagger)
+                : null;
+        return new WatermarkLayer(image, bounds.x, bounds.y, pattern);
+    }
+
     // 设置预览的图片
     public void setImageItem(ImageItem imageItem) {
         this.imageItem = imageItem;
+        this.zoom = 1.0;
+        this.panX = 0;
+        this.panY = 0;
         repaint();
     }
 
     // 设置图片水印
     public void setWatermarkImage(BufferedImage watermarkImage) {
         this.watermarkImage = watermarkImage;
-        repaint();
+        watermarkChanged();
     }
 
     // 设置文本水印
@@ -298,25 +584,30 @@ public class WatermarkPreviewPanel extends JPanel {
         this.textWatermark = textWatermark;
         this.textFont = textFont;
         this.textColor = textColor;
-        repaint();
+        if (textWatermark != null && textFont != null) {
+            FontMetrics fm = getFontMetrics(textFont);
+            this.textWidth = fm.stringWidth(textWatermark);
+            this.textHeight = fm.getHeight();
+        }
+        watermarkChanged();
     }
 
     // 设置缩放比例
     public void setScale(double scale) {
         this.scale = scale;
-        repaint();
+        watermarkChanged();
     }
 
     // 设置透明度
     public void setOpacity(int opacity) {
         this.opacity = opacity;
-        repaint();
+        watermarkChanged();
     }
 
     // 设置旋转角度（角度转为弧度）
     public void setRotation(double degrees) {
         this.rotation = Math.toRadians(degrees);
-        repaint();
+        watermarkChanged();
     }
 
     // 设置预设位置
@@ -325,6 +616,14 @@ public class WatermarkPreviewPanel extends JPanel {
         repaint();
     }
 
+    // 设置平铺模式，spacing为相邻水印的间距（原图像素），stagger为奇数行是否错开
+    public void setTiling(boolean tiled, int spacing, boolean stagger) {
+        this.tiled = tiled;
+        this.tileSpacing = spacing;
+        this.tileStagger = stagger;
+        watermarkChanged();
+    }
+
     // 获取当前水印位置
     public Point getWatermarkPosition() {
         return new Point(watermarkPosition);
@@ -369,4 +668,59 @@ public class WatermarkPreviewPanel extends JPanel {
     public boolean isUsePresetPosition() {
         return usePresetPosition;
     }
-}
\ No newline at end of file
+
+    private void watermarkLayerRendered(WatermarkLayer layer) {
+        watermarkLayer = layer;
+        repaint();
+    }
+
+    // 水印层的渲染参数快照
+    private static class LayerState {
+        private final BufferedImage watermarkImage;
+        private final String text;
+        private final Font textFont;
+        private final Color textColor;
+        private final int width;
+        private final int height;
+        private final int opacity;
+        private final double rotation;
+        private final double displayScale;
+        private final boolean draft;
+        private final boolean tiled;
+        private final int tileSpacing;
+        private final boolean tileStagger;
+
+        LayerState(BufferedImage watermarkImage, String text, Font textFont, Color textColor,
+                   int width, int height, int opacity, double rotation, double displayScale, boolean draft,
+                   boolean tiled, int tileSpacing, boolean tileStagger) {
+            this.watermarkImage = watermarkImage;
+            this.text = text;
+            this.textFont = textFont;
+            this.textColor = textColor;
+            this.width = width;
+            this.height = height;
+            this.opacity = opacity;
+            this.rotation = rotation;
+            this.displayScale = displayScale;
+            this.draft = draft;
+            this.tiled = tiled;
+            this.tileSpacing = tileSpacing;
+            this.tileStagger = tileStagger;
+        }
+    }
+
+    // 渲染好的水印层，offsetX/offsetY为图层左上角相对水印未旋转时左上角的偏移，pattern为平铺图案（非平铺时为null）
+    private static class WatermarkLayer {
+        private final BufferedImage image;
+        private final int offsetX;
+        private final int offsetY;
+        private final BufferedImage pattern;
+
+        WatermarkLayer(BufferedImage image, int offsetX, int offsetY, BufferedImage pattern) {
+            this.image = image;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.pattern = pattern;
+        }
+    }
+}
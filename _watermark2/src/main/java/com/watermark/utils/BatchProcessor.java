@@ -0,0 +1,153 @@
+package com.watermark.utils;
+
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量处理引擎：把逐张图片的解码/合成任务分发到固定大小的线程池中执行。
+ * 同时在途的任务数不超过线程数的两倍，避免结果图片在内存中无限堆积。
+ */
+public class BatchProcessor {
+
+    /**
+     * 单张图片的处理任务
+     */
+    public interface ItemTask<T> {
+        T process(int index) throws Exception;
+    }
+
+    /**
+     * 处理结果回调，在调用 run 的线程中按完成顺序触发
+     */
+    public interface Listener<T> {
+        void onItemDone(int index, T result);
+
+        void onItemFailed(int index, Exception e);
+    }
+
+    private final int threadCount;
+    private volatile boolean cancelled = false;
+    private volatile ExecutorService executor;
+
+    public BatchProcessor(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * 默认线程数：可用处理器核心数
+     */
+    public static int defaultThreadCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * 处理 count 个条目，阻塞直到全部完成或被取消，返回成功数量
+     */
+    public <T> int run(int count, ItemTask<T> task, Listener<T> listener) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount, new WorkerThreadFactory());
+        executor = pool;
+        try {
+            CompletionService<Result<T>> completionService = new ExecutorCompletionService<>(pool);
+            int maxInFlight = threadCount * 2;
+            int submitted = 0;
+            int completed = 0;
+            int successCount = 0;
+
+            while (completed < count && !cancelled) {
+                // 补充任务直到达到在途上限
+                while (submitted < count && submitted - completed < maxInFlight) {
+                    final int index = submitted++;
+                    completionService.submit(() -> {
+                        try {
+                            return new Result<>(index, task.process(index));
+                        } catch (Exception e) {
+                            throw new ItemException(index, e);
+                        }
+                    });
+                }
+
+                // 定时轮询，以便取消后被移出队列的任务不会让这里永久阻塞
+                Future<Result<T>> future = completionService.poll(100, TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    continue;
+                }
+                completed++;
+                try {
+                    Result<T> result = future.get();
+                    listener.onItemDone(result.index, result.value);
+                    successCount++;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof ItemException) {
+                        ItemException itemException = (ItemException) e.getCause();
+                        listener.onItemFailed(itemException.index, (Exception) itemException.getCause());
+                    } else {
+                        listener.onItemFailed(-1, e);
+                    }
+                }
+            }
+            return successCount;
+        } finally {
+            pool.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * 取消批处理：不再提交新任务，并中断正在执行的任务
+     */
+    public void cancel() {
+        cancelled = true;
+        ExecutorService pool = executor;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    // 带条目序号的异常，便于失败回调定位到具体图片
+    private static class ItemException extends Exception {
+        private final int index;
+
+        private ItemException(int index, Exception cause) {
+            super(cause.getMessage(), cause);
+            this.index = index;
+        }
+    }
+
+    private static class Result<T> {
+        private final int index;
+        private final T value;
+
+        private Result(int index, T value) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+        private final int poolNumber = POOL_NUMBER.getAndIncrement();
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "watermark-batch-" + poolNumber + "-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.watermark.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * 轻量的JPEG元数据读取器：按段头逐段跳读文件开头的标记段，读到图像帧头（SOF）为止，不解码图像数据。
+ * 从APP1段的EXIF（TIFF结构）中取出方向、拍摄时间、相机型号和IFD1中嵌入的缩略图，从SOF段取出图像尺寸。
+ * 通常只需读取文件开头的几KB到几十KB，各方法只使用局部状态，可在多个线程中并发调用。
+ */
+public class ExifReader {
+    private static final int TAG_MAKE = 0x010F;
+    private static final int TAG_MODEL = 0x0110;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_DATE_TIME_DIGITIZED = 0x9004;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    private static final int TYPE_ASCII = 2;
+
+    // EXIF日期时间格式，没有时区，按本地时间解释
+    private static final DateTimeFormatter EXIF_DATE_TIME = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+    // 最多检查的标记段数，防止损坏的文件导致长时间跳读
+    private static final int MAX_SEGMENTS = 64;
+
+    /**
+     * 读取结果，图像尺寸为文件中存储的方向（未按方向旋转）
+     */
+    public static class ExifData {
+        private int width;
+        private int height;
+        private int orientation = 1;
+        private long captureTime = -1;
+        private String make;
+        private String model;
+        private byte[] thumbnail;
+
+        ExifData() {
+        }
+
+        /**
+         * 由已保存的信息（如图片库目录中的记录）构造，没有嵌入缩略图
+         */
+        ExifData(int width, int height, int orientation, long captureTime, String make, String model) {
+            this.width = width;
+            this.height = height;
+            this.orientation = orientation;
+            this.captureTime = captureTime;
+            this.make = make;
+            this.model = model;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * EXIF方向（1-8），没有EXIF时为1
+         */
+        public int getOrientation() {
+            return orientation;
+        }
+
+        /**
+         * 拍摄时间（毫秒），依次取DateTimeOriginal、DateTimeDigitized和DateTime，都没有时为-1
+         */
+        public long getCaptureTime() {
+            return captureTime;
+        }
+
+        /**
+         * 相机厂商，没有时为null
+         */
+        public String getMake() {
+            return make;
+        }
+
+        /**
+         * 相机型号，没有时为null
+         */
+        public String getModel() {
+            return model;
+        }
+
+        /**
+         * 嵌入的JPEG缩略图数据，没有时为null
+         */
+        public byte[] getThumbnail() {
+            return thumbnail;
+        }
+    }
+
+    private ExifReader() {
+    }
+
+    /**
+     * 读取JPEG文件的尺寸、方向和嵌入缩略图，不是JPEG文件或找不到帧头时返回null
+     */
+    public static ExifData read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return read((buffer, position) -> readFully(channel, buffer, position));
+        }
+    }
+
+    /**
+     * 同上，从已读入内存的文件数据中解析，不再打开文件
+     */
+    public static ExifData read(byte[] data) throws IOException {
+        return read((buffer, position) -> {
+            if (position + buffer.remaining() > data.length) {
+                return false;
+            }
+            buffer.put(data, (int) position, buffer.remaining());
+            return true;
+        });
+    }
+
+    // 按段头逐段跳读，只读取段头、APP1段和帧头
+    private static ExifData read(Source source) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(9);
+        header.limit(2);
+        if (!source.read(header, 0) || header.getShort(0) != (short) 0xFFD8) {
+            return null;
+        }
+
+        ExifData data = new ExifData();
+        long position = 2;
+        for (int i = 0; i < MAX_SEGMENTS; i++) {
+            header.clear().limit(4);
+            if (!source.read(header, position)) {
+                return null;
+            }
+            int marker = header.getShort(0) & 0xFFFF;
+            int length = header.getShort(2) & 0xFFFF;
+            if ((marker & 0xFF00) != 0xFF00 || length < 2) {
+                return null;
+            }
+            if (isStartOfFrame(marker)) {
+                header.clear().limit(9);
+                if (!source.read(header, position)) {
+                    return null;
+                }
+                data.height = header.getShort(5) & 0xFFFF;
+                data.width = header.getShort(7) & 0xFFFF;
+                return data;
+            }
+            if (marker == 0xFFDA || marker == 0xFFD9) {
+                // 帧头之前就到了扫描数据或文件结尾
+                return null;
+            }
+            if (marker == 0xFFE1) {
+                ByteBuffer segment = ByteBuffer.allocate(length - 2);
+                if (!source.read(segment, position + 4)) {
+                    return null;
+                }
+                parseApp1(segment.array(), data);
+            }
+            position += 2 + length;
+        }
+        return null;
+    }
+
+    /**
+     * 按EXIF方向把存储方向的图片转为显示方向，方向为1或未知时返回原图
+     */
+    public static BufferedImage applyOrientation(BufferedImage image, int orientation) {
+        if (orientation < 2 || orientation > 8) {
+            return image;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean transposed = orientation >= 5;
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage oriented = transposed
+                ? new BufferedImage(height, width, type)
+                : new BufferedImage(width, height, type);
+
+        // 缩略图很小，逐像素按方向映射即可
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int targetX;
+                int targetY;
+                switch (orientation) {
+                    case 2: targetX = width - 1 - x; targetY = y; break;
+                    case 3: targetX = width - 1 - x; targetY = height - 1 - y; break;
+                    case 4: targetX = x; targetY = height - 1 - y; break;
+                    case 5: targetX = y; targetY = x; break;
+                    case 6: targetX = height - 1 - y; targetY = x; break;
+                    case 7: targetX = height - 1 - y; targetY = width - 1 - x; break;
+                    default: targetX = y; targetY = width - 1 - x; break;
+                }
+                oriented.setRGB(targetX, targetY, row[x]);
+            }
+        }
+        return oriented;
+    }
+
+    // SOF0-SOF15，不包括DHT(C4)、JPG(C8)和DAC(CC)
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xFFC0 && marker <= 0xFFCF
+                && marker != 0xFFC4 && marker != 0xFFC8 && marker != 0xFFCC;
+    }
+
+    // APP1段："Exif\0\0"之后是TIFF结构：字节序、IFD0偏移量，IFD0之后链接IFD1（缩略图）
+    private static void parseApp1(byte[] segment, ExifData data) {
+        byte[] signature = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+        if (segment.length < signature.length + 8) {
+            return;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (segment[i] != signature[i]) {
+                return;
+            }
+        }
+        ByteBuffer tiff = ByteBuffer.wrap(segment, signature.length, segment.length - signature.length).slice();
+        try {
+            if (tiff.get(0) == 'I' && tiff.get(1) == 'I') {
+                tiff.order(ByteOrder.LITTLE_ENDIAN);
+            } else if (tiff.get(0) != 'M' || tiff.get(1) != 'M') {
+                return;
+            }
+
+            // 拍摄时间优先取EXIF子IFD中的原始时间，其次是IFD0中的修改时间
+            String dateTime = null;
+            int exifIfd = -1;
+            int ifd0 = tiff.getInt(4);
+            int count = tiff.getShort(ifd0) & 0xFFFF;
+            for (int i = 0; i < count; i++) {
+                int entry = ifd0 + 2 + i * 12;
+                switch (tiff.getShort(entry) & 0xFFFF) {
+                    case TAG_ORIENTATION:
+                        data.orientation = tiff.getShort(entry + 8) & 0xFFFF;
+                        break;
+                    case TAG_MAKE:
+                        data.make = readAscii(tiff, entry);
+                        break;
+                    case TAG_MODEL:
+                        data.model = readAscii(tiff, entry);
+                        break;
+                    case TAG_DATE_TIME:
+                        dateTime = readAscii(tiff, entry);
+                        break;
+                    case TAG_EXIF_IFD:
+                        exifIfd = tiff.getInt(entry + 8);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            int ifd1 = tiff.getInt(ifd0 + 2 + count * 12);
+
+            String original = null;
+            String digitized = null;
+            if (exifIfd > 0) {
+                int exifCount = tiff.getShort(exifIfd) & 0xFFFF;
+                for (int i = 0; i < exifCount; i++) {
+                    int entry = exifIfd + 2 + i * 12;
+                    int tag = tiff.getShort(entry) & 0xFFFF;
+                    if (tag == TAG_DATE_TIME_ORIGINAL) {
+                        original = readAscii(tiff, entry);
+                    } else if (tag == TAG_DATE_TIME_DIGITIZED) {
+                        digitized = readAscii(tiff, entry);
+                    }
+                }
+            }
+            for (String value : new String[]{original, digitized, dateTime}) {
+                data.captureTime = parseDateTime(value);
+                if (data.captureTime >= 0) {
+                    break;
+                }
+            }
+
+            if (ifd1 <= 0) {
+                return;
+            }
+            int thumbnailOffset = -1;
+            int thumbnailLength = -1;
+            count = tiff.getShort(ifd1) & 0xFFFF;
+            for (int i = 0; i < count; i++) {
+                int entry = ifd1 + 2 + i * 12;
+                int tag = tiff.getShort(entry) & 0xFFFF;
+                if (tag == TAG_THUMBNAIL_OFFSET) {
+                    thumbnailOffset = tiff.getInt(entry + 8);
+                } else if (tag == TAG_THUMBNAIL_LENGTH) {
+                    thumbnailLength = tiff.getInt(entry + 8);
+                }
+            }
+            if (thumbnailOffset > 0 && thumbnailLength > 0
+                    && (long) thumbnailOffset + thumbnailLength <= tiff.capacity()) {
+                data.thumbnail = new byte[thumbnailLength];
+                tiff.position(thumbnailOffset);
+                tiff.get(data.thumbnail);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // 偏移量越界的EXIF只保留已读到的值
+        }
+    }
+
+    // ASCII类型的值：不超过4字节时直接存放在条目中，否则为偏移量；去掉结尾的\0和空格
+    private static String readAscii(ByteBuffer tiff, int entry) {
+        if ((tiff.getShort(entry + 2) & 0xFFFF) != TYPE_ASCII) {
+            return null;
+        }
+        int length = tiff.getInt(entry + 4);
+        if (length <= 0 || length > tiff.capacity()) {
+            return null;
+        }
+        int offset = length <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = tiff.get(offset + i);
+        }
+        String value = new String(bytes, StandardCharsets.US_ASCII);
+        int end = value.indexOf('\0');
+        value = (end >= 0 ? value.substring(0, end) : value).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    // 解析"yyyy:MM:dd HH:mm:ss"，相机未设置时间时常写入空格或全零，无法解析时返回-1
+    private static long parseDateTime(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return LocalDateTime.parse(value, EXIF_DATE_TIME).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    // 从文件或内存中的指定位置读满缓冲区，数据提前结束时返回false
+    private interface Source {
+        boolean read(ByteBuffer buffer, long position) throws IOException;
+    }
+
+    // 读满缓冲区，文件提前结束时返回false
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,272 @@
+package com.watermark.utils;
+
+import com.watermark.model.ExportSettings;
+import com.watermark.model.WatermarkTemplate;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 导出清单：保存在导出文件夹中，按相对于导出文件夹的路径记录每个输出文件
+ * 由哪个源文件（大小、修改时间、内容哈希）以及哪一组水印配方和编码设置生成。再次导出到同一文件夹时，源文件、配方和设置都没有变化、
+ * 输出文件也没有被改动的条目可以直接跳过。
+ * 导出过程中每写出一个文件追加一条记录，中途取消或崩溃时已完成的部分也不会丢失；
+ * 关闭时整理为每个输出文件一条记录。
+ */
+public class ExportManifest {
+    private static final String FILE_NAME = ".watermark-export.manifest";
+    private static final int MAGIC = 0x574D4558; // "WMEX"
+    // 渲染结果的格式发生变化时递增，旧清单中的记录全部失效
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final File outputFolder;
+    private final String settingsKey;
+    private final Map<String, Record> records = new HashMap<>();
+    // 同一批次中的水印图片是同一个对象，像素哈希只计算一次
+    private final Map<BufferedImage, String> imageHashes = new IdentityHashMap<>();
+    private DataOutputStream appender;
+
+    private ExportManifest(File outputFolder, ExportSettings settings) {
+        this.file = new File(outputFolder, FILE_NAME);
+        this.outputFolder = outputFolder;
+        this.settingsKey = settingsKey(settings);
+    }
+
+    /**
+     * 打开导出文件夹中的清单，不存在时创建空清单。清单无法读取时视为空清单，所有条目重新导出
+     */
+    public static ExportManifest open(File outputFolder, ExportSettings settings) {
+        ExportManifest manifest = new ExportManifest(outputFolder, settings);
+        if (manifest.file.isFile()) {
+            try {
+                manifest.load();
+            } catch (IOException e) {
+                System.err.println("读取导出清单失败，将重新导出所有图片：" + e.getMessage());
+                manifest.records.clear();
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * 计算条目的配方哈希：水印模板的全部参数、水印图片的像素和影响输出的编码设置
+     */
+    public synchronized String recipeHash(WatermarkTemplate recipe, BufferedImage watermarkImage) {
+        StringBuilder key = new StringBuilder(settingsKey);
+        if (recipe != null) {
+            key.append('|').append(recipe);
+            // Color.toString不包含alpha
+            if (recipe.getTextColor() != null) {
+                key.append('|').append(recipe.getTextColor().getRGB());
+            }
+        }
+        if (watermarkImage != null) {
+            String imageHash = imageHashes.get(watermarkImage);
+            if (imageHash == null) {
+                imageHash = pixelHash(watermarkImage);
+                imageHashes.put(watermarkImage, imageHash);
+            }
+            key.append('|').append(imageHash);
+        }
+        return FileHasher.toHex(FileHasher.sha256(key.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 判断输出文件是否已是最新：记录中的配方一致，输出文件未被改动，源文件未变化。
+     * 源文件大小相同但修改时间不同（如被复制或touch过）时比较内容哈希，内容相同仍视为最新；
+     * modifiedTimeMatters为true时（水印中的拍摄日期可能取自修改时间）修改时间变化就需要重新导出
+     */
+    public synchronized boolean isUpToDate(File source, File output, String recipeHash, boolean modifiedTimeMatters)
+            throws IOException {
+        Record record = records.get(relativePath(output));
+        if (record == null || !record.recipeHash.equals(recipeHash)
+                || !record.sourcePath.equals(source.getAbsolutePath())) {
+            return false;
+        }
+        if (output.length() != record.outputSize || output.lastModified() != record.outputModified) {
+            return false;
+        }
+        long size = source.length();
+        long modified = source.lastModified();
+        if (size != record.sourceSize) {
+            return false;
+        }
+        if (modified == record.sourceModified) {
+            return true;
+        }
+        if (modifiedTimeMatters) {
+            return false;
+        }
+        if (!FileHasher.toHex(FileHasher.sha256(source)).equals(record.sourceHash)) {
+            return false;
+        }
+        // 内容没有变化，更新记录中的修改时间，下次不必再计算哈希
+        record(new Record(record.outputPath, record.sourcePath, size, modified, record.sourceHash,
+                recipeHash, record.outputSize, record.outputModified));
+        return true;
+    }
+
+    /**
+     * 记录一个刚写出的输出文件。sourceSize和sourceModified应在读取源文件之前获取，
+     * 读取期间源文件被修改时下次导出会重新处理
+     */
+    public synchronized void record(File source, long sourceSize, long sourceModified, String sourceHash,
+                                    String recipeHash, File output) throws IOException {
+        record(new Record(relativePath(output), source.getAbsolutePath(), sourceSize, sourceModified, sourceHash,
+                recipeHash, output.length(), output.lastModified()));
+    }
+
+    /**
+     * 关闭清单，把追加的记录整理为每个输出文件一条
+     */
+    public synchronized void close() throws IOException {
+        if (appender == null) {
+            return;
+        }
+        appender.close();
+        appender = null;
+        rewrite();
+    }
+
+    // 输出文件相对于导出文件夹的路径，统一使用 / 分隔，不同子文件夹中的同名文件各有一条记录
+    private String relativePath(File output) {
+        return outputFolder.getAbsoluteFile().toPath().relativize(output.getAbsoluteFile().toPath())
+                .toString().replace(File.separatorChar, '/');
+    }
+
+    // 第一次追加前先整理一次，旧版本的清单或末尾不完整的记录不会影响后面追加的内容
+    private void record(Record record) throws IOException {
+        records.put(record.outputPath, record);
+        if (appender == null) {
+            rewrite();
+            appender = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            return;
+        }
+        record.write(appender);
+        appender.flush();
+    }
+
+    // 把所有记录写入临时文件后替换清单，避免留下不完整的清单
+    private void rewrite() throws IOException {
+        File temp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Record record : records.values()) {
+                record.write(out);
+            }
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // 读取清单，同一输出文件的后一条记录覆盖前一条；末尾不完整的记录（写入时中断）被忽略
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            while (true) {
+                Record record;
+                try {
+                    record = Record.read(in);
+                } catch (EOFException e) {
+                    break;
+                }
+                records.put(record.outputPath, record);
+            }
+        }
+    }
+
+    // 影响输出内容的编码设置；命名规则只决定输出文件名，不参与比较
+    private static String settingsKey(ExportSettings settings) {
+        StringBuilder key = new StringBuilder(settings.getOutputFormat());
+        if ("JPEG".equals(settings.getOutputFormat())) {
+            key.append('|').append(settings.getQuality())
+                    .append('|').append(settings.isOptimizeHuffman())
+                    .append('|').append(settings.isProgressive())
+                    .append('|').append(settings.getChromaSubsampling())
+                    .append('|').append(settings.isPartialJpegReencode());
+        }
+        return key.toString();
+    }
+
+    // 按行计算水印图片像素的哈希，与图片的存储格式无关
+    private static String pixelHash(BufferedImage image) {
+        MessageDigest digest = FileHasher.newDigest();
+        int width = image.getWidth();
+        int[] row = new int[width];
+        byte[] bytes = new byte[width * 4];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int pixel = row[x];
+                bytes[x * 4] = (byte) (pixel >>> 24);
+                bytes[x * 4 + 1] = (byte) (pixel >>> 16);
+                bytes[x * 4 + 2] = (byte) (pixel >>> 8);
+                bytes[x * 4 + 3] = (byte) pixel;
+            }
+            digest.update(bytes);
+        }
+        return width + "x" + image.getHeight() + ":" + FileHasher.toHex(digest.digest());
+    }
+
+    private static class Record {
+        private final String outputPath;
+        private final String sourcePath;
+        private final long sourceSize;
+        private final long sourceModified;
+        private final String sourceHash;
+        private final String recipeHash;
+        private final long outputSize;
+        private final long outputModified;
+
+        private Record(String outputPath, String sourcePath, long sourceSize, long sourceModified, String sourceHash,
+                       String recipeHash, long outputSize, long outputModified) {
+            this.outputPath = outputPath;
+            this.sourcePath = sourcePath;
+            this.sourceSize = sourceSize;
+            this.sourceModified = sourceModified;
+            this.sourceHash = sourceHash;
+            this.recipeHash = recipeHash;
+            this.outputSize = outputSize;
+            this.outputModified = outputModified;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(outputPath);
+            out.writeUTF(sourcePath);
+            out.writeLong(sourceSize);
+            out.writeLong(sourceModified);
+            out.writeUTF(sourceHash);
+            out.writeUTF(recipeHash);
+            out.writeLong(outputSize);
+            out.writeLong(outputModified);
+        }
+
+        private static Record read(DataInputStream in) throws IOException {
+            return new Record(in.readUTF(), in.readUTF(), in.readLong(), in.readLong(), in.readUTF(),
+                    in.readUTF(), in.readLong(), in.readLong());
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package com.watermark.utils;
+
+import com.watermark.model.ExportSettings;
+import com.watermark.model.WatermarkTemplate;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流水线导出：读取、解码合成、编码、写出四个阶段同时运行，阶段之间用有界队列连接。
+ * 读取线程只做文件I/O，合成线程解码源图并混合水印，编码线程把结果压缩为文件数据，
+ * 写出在调用 run 的线程中按条目顺序进行。下游跟不上时上游在队列上阻塞，
+ * 吞吐量取决于最慢的阶段，内存占用取决于队列深度而与批量大小无关。
+ * 提供导出清单时，读取阶段跳过输出已是最新的条目，写出后把新的输出记入清单。
+ * 文本水印中的变量（拍摄日期、文件名、序号等）在读取阶段按条目替换，拍摄日期和相机从已读入的文件数据中解析EXIF，不再打开文件。
+ */
+public class ExportPipeline {
+
+    /**
+     * 一个导出条目，recipe为null时只做格式转换。
+     * copies为内容与源文件相同的其他图片对应的输出文件，写出同一份结果，不再重复渲染；
+     * 配方含有随文件名或序号变化的变量时，重复文件应作为单独的条目
+     */
+    public static class Item {
+        private final File source;
+        private final WatermarkTemplate recipe;
+        private final BufferedImage watermarkImage;
+        private final File output;
+        private final List<File> copies;
+
+        public Item(File source, WatermarkTemplate recipe, BufferedImage watermarkImage, File output) {
+            this(source, recipe, watermarkImage, output, Collections.<File>emptyList());
+        }
+
+        public Item(File source, WatermarkTemplate recipe, BufferedImage watermarkImage, File output, List<File> copies) {
+            this.source = source;
+            this.recipe = recipe;
+            this.watermarkImage = watermarkImage;
+            this.output = output;
+            this.copies = copies;
+        }
+
+        public File getSource() {
+            return source;
+        }
+
+        public File getOutput() {
+            return output;
+        }
+
+        public List<File> getCopies() {
+            return copies;
+        }
+    }
+
+    private final int workerCount;
+    private volatile boolean cancelled = false;
+    private volatile ExecutorService executor;
+    private int skippedCount = 0;
+
+    /**
+     * workerCount为合成线程数，编码线程数与之相同
+     */
+    public ExportPipeline(int workerCount) {
+        this.workerCount = Math.max(1, workerCount);
+    }
+
+    /**
+     * 导出所有条目，阻塞直到全部写出或被取消，返回成功数量（包括已是最新而跳过的条目）。
+     * manifest为null时不做增量判断；settings.forceRebuild为true时全部重新导出，但仍更新清单。
+     * 回调在调用 run 的线程中按条目顺序触发
+     */
+    public int run(List<Item> items, ExportSettings settings, ExportManifest manifest,
+                   BatchProcessor.Listener<File> listener) throws InterruptedException {
+        int count = items.size();
+        // 已读取但尚未写出的条目数上限。解码后的大图只存在于合成和编码阶段，
+        // 排队等待写出的条目只持有压缩后的数据，所以上限可以比线程数大，给顺序写出留出余量
+        int window = workerCount * 4;
+        Semaphore permits = new Semaphore(window);
+        BlockingQueue<Job> readQueue = new ArrayBlockingQueue<>(workerCount);
+        BlockingQueue<Job> compositeQueue = new ArrayBlockingQueue<>(workerCount);
+        BlockingQueue<Job> encodedQueue = new ArrayBlockingQueue<>(window);
+
+        ExecutorService pool = Executors.newFixedThreadPool(1 + workerCount * 2, new StageThreadFactory());
+        executor = pool;
+        skippedCount = 0;
+        boolean incremental = manifest != null && !settings.isForceRebuild();
+        try {
+            pool.execute(() -> readStage(items, manifest, incremental, permits, readQueue));
+            for (int i = 0; i < workerCount; i++) {
+                pool.execute(() -> stage(readQueue, compositeQueue, job -> composite(job, settings)));
+                pool.execute(() -> stage(compositeQueue, encodedQueue, job -> encode(job, settings)));
+            }
+
+            // 写出阶段：先到的条目暂存，按序号依次写出
+            Map<Integer, Job> pending = new HashMap<>();
+            int next = 0;
+            int successCount = 0;
+            while (next < count && !cancelled) {
+                // 定时轮询，以便取消后这里不会永久阻塞
+                Job job = encodedQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (job == null) {
+                    continue;
+                }
+                pending.put(job.index, job);
+                while ((job = pending.remove(next)) != null) {
+                    if (job.skipped) {
+                        successCount++;
+                        skippedCount++;
+                        listener.onItemDone(job.index, job.item.output);
+                    } else if (write(job, manifest)) {
+                        successCount++;
+                        listener.onItemDone(job.index, job.item.output);
+                    } else {
+                        listener.onItemFailed(job.index, job.error);
+                    }
+                    permits.release();
+                    next++;
+                }
+            }
+            return successCount;
+        } finally {
+            pool.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * 取消导出：不再读取新条目，并中断各阶段正在执行的任务
+     */
+    public void cancel() {
+        cancelled = true;
+        ExecutorService pool = executor;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 上一次 run 中因输出已是最新而跳过的条目数
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    // 读取阶段：在途条目达到上限时等待写出阶段释放
+    private void readStage(List<Item> items, ExportManifest manifest, boolean incremental,
+                           Semaphore permits, BlockingQueue<Job> readQueue) {
+        int index = 0;
+        Exception failure;
+        try {
+            for (; index < items.size() && !cancelled; index++) {
+                permits.acquire();
+                Job job = new Job(index, items.get(index));
+                try {
+                    read(job, manifest, incremental);
+                } catch (Throwable e) {
+                    // 包括读入超大文件时的内存不足，只算这个条目失败
+                    job.sourceBytes = null;
+                    job.error = toException(e);
+                }
+                readQueue.put(job);
+            }
+            return;
+        } catch (InterruptedException e) {
+            // 导出结束或被取消
+            return;
+        } catch (Throwable e) {
+            failure = toException(e);
+        }
+        // 读取线程意外退出：剩余条目全部报告失败，保证按序写出的循环能够结束
+        try {
+            for (; index < items.size() && !cancelled; index++) {
+                Job job = new Job(index, null);
+                job.error = failure;
+                readQueue.put(job);
+            }
+        } catch (InterruptedException e) {
+            // 导出结束或被取消
+        }
+    }
+
+    // 合成和编码阶段的工作循环，出错或已是最新的条目跳过后续处理，直接交给写出阶段报告
+    private void stage(BlockingQueue<Job> input, BlockingQueue<Job> output, StageTask task) {
+        try {
+            while (!cancelled) {
+                Job job = input.take();
+                if (job.error == null && !job.skipped) {
+                    try {
+                        task.process(job);
+                    } catch (Throwable e) {
+                        // 释放这张图片占用的内存，不影响其他条目
+                        job.image = null;
+                        job.encoded = null;
+                        job.error = toException(e);
+                    }
+                }
+                output.put(job);
+            }
+        } catch (InterruptedException e) {
+            // 导出结束或被取消
+        }
+    }
+
+    // 各阶段的错误都作为条目失败交给写出阶段报告，Error不能让阶段线程退出，否则写出阶段会一直等待
+    private static Exception toException(Throwable e) {
+        if (e instanceof Exception) {
+            return (Exception) e;
+        }
+        if (e instanceof OutOfMemoryError) {
+            return new IOException("内存不足，图片过大", e);
+        }
+        return new IOException("处理失败：" + e, e);
+    }
+
+    // 读取源文件数据；超大的源图不整体读入内存，由合成阶段分条流式处理
+    private static void read(Job job, ExportManifest manifest, boolean incremental) throws IOException {
+        Item item = job.item;
+        int index = job.index + 1;
+        // 原地覆盖源文件的条目写出后源文件本身就变了，不参与增量判断
+        boolean tracked = manifest != null && !item.output.getAbsoluteFile().equals(item.source.getAbsoluteFile());
+        if (tracked) {
+            // 替换了文件名和序号的配方参与增量判断；拍摄日期和相机只取决于源文件，由清单比较源文件，不必为此读取EXIF
+            job.recipeHash = manifest.recipeHash(TextTokens.resolveFileTokens(item.recipe, item.source, index),
+                    item.watermarkImage);
+            if (incremental && isUpToDate(item, manifest, job.recipeHash)) {
+                job.skipped = true;
+                return;
+            }
+            // 在读取之前获取，读取期间源文件被修改时下次导出会重新处理
+            job.sourceSize = item.source.length();
+            job.sourceModified = item.source.lastModified();
+        }
+
+        // 递归导入的图片写到导出文件夹中对应的子文件夹
+        createParentFolder(item.output);
+        for (File copy : item.copies) {
+            createParentFolder(copy);
+        }
+
+        // EXIF读取失败时抛出异常，和其他读取错误一样按条目报告失败
+        boolean needsExif = TextTokens.needsExif(item.recipe);
+        if (StripStreamRenderer.shouldStream(item.source)) {
+            job.streaming = true;
+            // 超大的源图不整体读入内存，EXIF只读取文件开头的标记段
+            job.recipe = TextTokens.resolve(item.recipe, item.source, index,
+                    needsExif ? ExifReader.read(item.source) : null);
+            if (tracked) {
+                job.sourceHash = FileHasher.toHex(FileHasher.sha256(item.source));
+            }
+            return;
+        }
+        job.sourceBytes = Files.readAllBytes(item.source.toPath());
+        job.recipe = TextTokens.resolve(item.recipe, item.source, index,
+                needsExif ? ExifReader.read(job.sourceBytes) : null);
+        if (tracked) {
+            job.sourceHash = FileHasher.toHex(FileHasher.sha256(job.sourceBytes));
+        }
+    }
+
+    private static void createParentFolder(File output) throws IOException {
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+    }
+
+    // 主输出和所有副本都是最新时才跳过
+    private static boolean isUpToDate(Item item, ExportManifest manifest, String recipeHash) throws IOException {
+        boolean modifiedTimeMatters = TextTokens.dependsOnModifiedTime(item.recipe);
+        if (!manifest.isUpToDate(item.source, item.output, recipeHash, modifiedTimeMatters)) {
+            return false;
+        }
+        for (File copy : item.copies) {
+            if (!manifest.isUpToDate(item.source, copy, recipeHash, modifiedTimeMatters)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 解码并合成水印；JPEG源图优先只重新编码水印块，直接得到文件数据
+    private static void composite(Job job, ExportSettings settings) throws IOException {
+        Item item = job.item;
+        if (job.streaming) {
+            StripStreamRenderer.export(item.source, job.recipe, item.watermarkImage, item.output, settings.getOutputFormat());
+            job.written = true;
+            return;
+        }
+
+        byte[] source = job.sourceBytes;
+        job.sourceBytes = null;
+        if ("JPEG".equals(settings.getOutputFormat()) && settings.isPartialJpegReencode()) {
+            job.encoded = JpegBlockReencoder.reencode(source, job.recipe, item.watermarkImage);
+            if (job.encoded != null) {
+                return;
+            }
+        }
+
+        // 数据已在内存中，不使用ImageIO默认的磁盘缓存
+        BufferedImage image = ImageIO.read(new MemoryCacheImageInputStream(new ByteArrayInputStream(source)));
+        if (image == null) {
+            throw new IOException("无法识别的图片格式");
+        }
+        // 直接在解码结果上合成，只有PNG输出且源图带透明度时才使用带alpha的格式
+        job.image = job.recipe != null
+                ? WatermarkRenderer.renderInPlace(image, job.recipe, item.watermarkImage,
+                !"JPEG".equals(settings.getOutputFormat()))
+                : image;
+    }
+
+    private static void encode(Job job, ExportSettings settings) throws IOException {
+        if (job.image == null) {
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageExporter.writeImage(job.image, out, settings);
+        job.image = null;
+        job.encoded = out.toByteArray();
+    }
+
+    // 写出一个条目及其副本并记入清单，返回是否成功
+    private static boolean write(Job job, ExportManifest manifest) {
+        if (job.error != null) {
+            return false;
+        }
+        Item item = job.item;
+        try {
+            if (!job.written) {
+                Files.write(item.output.toPath(), job.encoded);
+            }
+            for (File copy : item.copies) {
+                if (job.written) {
+                    // 分条流式导出直接写到了主输出文件
+                    Files.copy(item.output.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    Files.write(copy.toPath(), job.encoded);
+                }
+            }
+            if (job.sourceHash != null) {
+                try {
+                    manifest.record(item.source, job.sourceSize, job.sourceModified, job.sourceHash,
+                            job.recipeHash, item.output);
+                    for (File copy : item.copies) {
+                        manifest.record(item.source, job.sourceSize, job.sourceModified, job.sourceHash,
+                                job.recipeHash, copy);
+                    }
+                } catch (IOException e) {
+                    // 清单写入失败不影响导出结果，只是下次导出时这张图片会重新处理
+                    System.err.println("更新导出清单失败：" + e.getMessage());
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            job.error = e;
+            return false;
+        } finally {
+            job.encoded = null;
+        }
+    }
+
+    private interface StageTask {
+        void process(Job job) throws IOException;
+    }
+
+    // 在各阶段之间传递的条目状态，每个阶段处理完后释放上一阶段的数据
+    private static class Job {
+        private final int index;
+        private final Item item;
+        private WatermarkTemplate recipe;
+        private byte[] sourceBytes;
+        private boolean streaming;
+        private BufferedImage image;
+        private byte[] encoded;
+        private boolean written;
+        private boolean skipped;
+        private long sourceSize;
+        private long sourceModified;
+        private String sourceHash;
+        private String recipeHash;
+        private Exception error;
+
+        private Job(int index, Item item) {
+            this.index = index;
+            this.item = item;
+        }
+    }
+
+    private static class StageThreadFactory implements ThreadFactory {
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+        private final int poolNumber = POOL_NUMBER.getAndIncrement();
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "watermark-export-" + poolNumber + "-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
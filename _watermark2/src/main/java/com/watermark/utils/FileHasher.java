@@ -0,0 +1,67 @@
+package com.watermark.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 文件内容哈希工具：通过FileChannel流式读取文件计算SHA-256
+ */
+public class FileHasher {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 每个线程复用一块直接缓冲区，避免反复分配
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    private FileHasher() {
+    }
+
+    /**
+     * 计算文件内容的SHA-256哈希
+     */
+    public static byte[] sha256(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = BUFFERS.get();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * 计算内存中数据的SHA-256哈希
+     */
+    public static byte[] sha256(byte[] data) {
+        return newDigest().digest(data);
+    }
+
+    /**
+     * 把哈希值转换为十六进制字符串
+     */
+    public static String toHex(byte[] hash) {
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // 所有Java平台都必须支持SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
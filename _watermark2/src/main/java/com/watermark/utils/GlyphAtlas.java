@@ -0,0 +1,242 @@
+package com.watermark.utils;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 字形图集：按字体、颜色、阴影和描边把每个字形栅格化一次（文字、阴影、描边各一层），
+ * 之后排版任意文字时只需把字形图像逐个贴到行图像上，不再对整行文字做多遍光栅化。
+ * 水印文字随图片变化（日期、序号、文件名等）时，每张图片只需排版和贴图；
+ * 中文等大字符集的字体也只栅格化实际用到的字形。
+ * 贴图顺序与 WatermarkRenderer.drawText 相同：先贴所有字形的阴影，再贴描边，最后贴文字，
+ * 同一层颜色相同，字形重叠处的效果与整行绘制一致。
+ */
+public class GlyphAtlas {
+    // 同时缓存的图集数量，批处理通常只用一个
+    private static final int MAX_CACHED_ATLASES = 4;
+
+    // 阴影向右下偏移的像素数，描边向四周扩展的像素数，与drawText一致
+    private static final int SHADOW_OFFSET = 2;
+    private static final int OUTLINE_WIDTH = 1;
+
+    private static final Map<List<Object>, GlyphAtlas> CACHE =
+            new LinkedHashMap<List<Object>, GlyphAtlas>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, GlyphAtlas> eldest) {
+                    return size() > MAX_CACHED_ATLASES;
+                }
+            };
+
+    private final Font font;
+    private final Color color;
+    private final Color shadowColor;
+    private final boolean outline;
+    private final FontRenderContext frc;
+    private final FontMetrics metrics;
+    private final Map<Integer, Glyph> glyphs = new HashMap<>();
+
+    private GlyphAtlas(Font font, Color color, boolean hasShadow, boolean hasOutline) {
+        this.font = font;
+        this.color = color;
+        this.shadowColor = hasShadow ? new Color(0, 0, 0, color.getAlpha() / 2) : null;
+        this.outline = hasOutline;
+
+        // 用与绘制时相同的渲染提示排版，字形位置为整数像素
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = scratch.createGraphics();
+        setTextHints(g2d);
+        this.frc = g2d.getFontRenderContext();
+        this.metrics = g2d.getFontMetrics(font);
+        g2d.dispose();
+    }
+
+    /**
+     * 获取字体和外观参数对应的图集，color为已合成透明度的文字颜色
+     */
+    public static GlyphAtlas of(Font font, Color color, boolean hasShadow, boolean hasOutline) {
+        List<Object> key = Arrays.asList(font, color, hasShadow, hasOutline);
+        synchronized (CACHE) {
+            GlyphAtlas atlas = CACHE.get(key);
+            if (atlas == null) {
+                atlas = new GlyphAtlas(font, color, hasShadow, hasOutline);
+                CACHE.put(key, atlas);
+            }
+            return atlas;
+        }
+    }
+
+    /**
+     * 排好的一行文字（含阴影和描边，未旋转）。bounds为图像在以基线起点为原点的坐标系中的位置
+     */
+    public static class Line {
+        private final BufferedImage image;
+        private final Rectangle bounds;
+
+        private Line(BufferedImage image, Rectangle bounds) {
+            this.image = image;
+            this.bounds = bounds;
+        }
+
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        public Rectangle getBounds() {
+            return bounds;
+        }
+    }
+
+    /**
+     * 文字宽度，与FontMetrics.stringWidth一致，用于计算水印锚点
+     */
+    public int stringWidth(String text) {
+        return metrics.stringWidth(text);
+    }
+
+    public int getAscent() {
+        return metrics.getAscent();
+    }
+
+    /**
+     * 排版一行文字并从图集中贴出字形，返回预乘alpha的ARGB图像。文字没有可见字形时图像为1x1的透明图像
+     */
+    public Line layout(String text) {
+        char[] chars = text.toCharArray();
+        GlyphVector vector = font.layoutGlyphVector(frc, chars, 0, chars.length, Font.LAYOUT_LEFT_TO_RIGHT);
+        int count = vector.getNumGlyphs();
+        Glyph[] placed = new Glyph[count];
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+
+        Rectangle bounds = null;
+        for (int i = 0; i < count; i++) {
+            Glyph glyph = glyph(vector.getGlyphCode(i));
+            if (glyph.fill == null) {
+                continue;
+            }
+            Point2D position = vector.getGlyphPosition(i);
+            placed[i] = glyph;
+            xs[i] = (int) Math.round(position.getX());
+            ys[i] = (int) Math.round(position.getY());
+            Rectangle glyphBounds = new Rectangle(glyph.bounds);
+            glyphBounds.translate(xs[i], ys[i]);
+            bounds = bounds == null ? glyphBounds : bounds.union(glyphBounds);
+        }
+        if (bounds == null) {
+            return new Line(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE), new Rectangle(0, 0, 1, 1));
+        }
+
+        BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = image.createGraphics();
+        g2d.translate(-bounds.x, -bounds.y);
+        if (shadowColor != null) {
+            for (int i = 0; i < count; i++) {
+                if (placed[i] != null) {
+                    g2d.drawImage(placed[i].shadow, xs[i] + placed[i].inkX + SHADOW_OFFSET,
+                            ys[i] + placed[i].inkY + SHADOW_OFFSET, null);
+                }
+            }
+        }
+        if (outline) {
+            for (int i = 0; i < count; i++) {
+                if (placed[i] != null) {
+                    g2d.drawImage(placed[i].outline, xs[i] + placed[i].inkX - OUTLINE_WIDTH,
+                            ys[i] + placed[i].inkY - OUTLINE_WIDTH, null);
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (placed[i] != null) {
+                g2d.drawImage(placed[i].fill, xs[i] + placed[i].inkX, ys[i] + placed[i].inkY, null);
+            }
+        }
+        g2d.dispose();
+        return new Line(image, bounds);
+    }
+
+    /**
+     * 同一图集被多个导出线程共用，首次用到的字形在锁内栅格化
+     */
+    private synchronized Glyph glyph(int code) {
+        Glyph glyph = glyphs.get(code);
+        if (glyph == null) {
+            glyph = rasterize(code);
+            glyphs.put(code, glyph);
+        }
+        return glyph;
+    }
+
+    private Glyph rasterize(int code) {
+        GlyphVector vector = font.createGlyphVector(frc, new int[]{code});
+        Rectangle ink = vector.getGlyphPixelBounds(0, frc, 0, 0);
+        Glyph glyph = new Glyph();
+        if (ink.isEmpty()) {
+            // 空格等不可见字形只占位，不贴图
+            return glyph;
+        }
+        // 像素边界按抗锯齿边缘估算，四周各留1像素余量
+        ink.grow(1, 1);
+        glyph.inkX = ink.x;
+        glyph.inkY = ink.y;
+        glyph.fill = render(vector, ink, color, new int[][]{{0, 0}});
+        glyph.bounds = new Rectangle(ink);
+        if (shadowColor != null) {
+            glyph.shadow = render(vector, ink, shadowColor, new int[][]{{0, 0}});
+            glyph.bounds.add(new Rectangle(ink.x + SHADOW_OFFSET, ink.y + SHADOW_OFFSET, ink.width, ink.height));
+        }
+        if (outline) {
+            // 描边层把8个方向的偏移合成在一起，颜色相同，合成顺序不影响结果
+            Rectangle grown = new Rectangle(ink);
+            grown.grow(OUTLINE_WIDTH, OUTLINE_WIDTH);
+            int[][] offsets = new int[8][];
+            int n = 0;
+            for (int dx = -OUTLINE_WIDTH; dx <= OUTLINE_WIDTH; dx++) {
+                for (int dy = -OUTLINE_WIDTH; dy <= OUTLINE_WIDTH; dy++) {
+                    if (dx != 0 || dy != 0) {
+                        offsets[n++] = new int[]{dx, dy};
+                    }
+                }
+            }
+            glyph.outline = render(vector, grown, Color.BLACK, offsets);
+            glyph.bounds.add(grown);
+        }
+        return glyph;
+    }
+
+    // 在region大小的透明图像上按各偏移绘制字形，region为以字形原点为原点的坐标
+    private BufferedImage render(GlyphVector vector, Rectangle region, Color paint, int[][] offsets) {
+        BufferedImage image = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = image.createGraphics();
+        setTextHints(g2d);
+        g2d.setColor(paint);
+        for (int[] offset : offsets) {
+            g2d.drawGlyphVector(vector, offset[0] - region.x, offset[1] - region.y);
+        }
+        g2d.dispose();
+        return image;
+    }
+
+    private static void setTextHints(Graphics2D g2d) {
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    }
+
+    // 一个字形的各层图像，位置相对字形原点；不可见字形的图像为null
+    private static class Glyph {
+        private BufferedImage fill;
+        private BufferedImage shadow;
+        private BufferedImage outline;
+        private int inkX;
+        private int inkY;
+        // 所有层合起来的范围
+        private Rectangle bounds;
+    }
+}
@@ -0,0 +1,156 @@
+package com.watermark.utils;
+
+import com.watermark.model.ExportSettings;
+import org.w3c.dom.NodeList;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 导出工具：输出文件命名与按格式写出图片，图形界面与命令行共用
+ */
+public class ImageExporter {
+
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+    // 每个线程复用一个编码器实例，不必为每个文件重新查找和创建
+    private static final ThreadLocal<ImageWriter> JPEG_WRITER =
+            ThreadLocal.withInitial(() -> ImageIO.getImageWritersByFormatName("jpeg").next());
+    private static final ThreadLocal<ImageWriter> PNG_WRITER =
+            ThreadLocal.withInitial(() -> ImageIO.getImageWritersByFormatName("png").next());
+
+    private ImageExporter() {
+    }
+
+    /**
+     * 根据命名规则生成新文件名
+     */
+    public static String generateNewFileName(String originalName, ExportSettings settings) {
+        // 移除文件扩展名
+        int lastDotIndex = originalName.lastIndexOf('.');
+        String nameWithoutExtension = lastDotIndex > 0 ? originalName.substring(0, lastDotIndex) : originalName;
+        String extension = settings.getOutputFormat().toLowerCase();
+
+        switch (settings.getNamingRule()) {
+            case "prefix":
+                return settings.getPrefix() + originalName;
+            case "suffix":
+                return nameWithoutExtension + settings.getSuffix() + "." + extension;
+            case "original":
+            default:
+                // 保留原文件名，但可能需要更改扩展名
+                return nameWithoutExtension + "." + extension;
+        }
+    }
+
+    /**
+     * 在folder中为fileName生成本批次内不重复的输出文件：已被其他条目使用时在扩展名前加上 (2)、(3)……
+     * used记录本批次已分配的输出路径（不区分大小写，兼容大小写不敏感的文件系统）。
+     * 列表顺序不变时每次分配的结果相同，增量导出可以识别出同一个输出文件
+     */
+    public static File uniqueOutputFile(File folder, String fileName, Set<String> used) {
+        int lastDotIndex = fileName.lastIndexOf('.');
+        String base = lastDotIndex > 0 ? fileName.substring(0, lastDotIndex) : fileName;
+        String extension = lastDotIndex > 0 ? fileName.substring(lastDotIndex) : "";
+        File output = new File(folder, fileName);
+        for (int n = 2; !used.add(output.getAbsolutePath().toLowerCase(Locale.ROOT)); n++) {
+            output = new File(folder, base + " (" + n + ")" + extension);
+        }
+        return output;
+    }
+
+    /**
+     * 按导出设置中的格式把图片编码到输出流，不关闭输出流。
+     * JPEG使用导出设置中的质量、Huffman表、渐进式和色度抽样选项
+     */
+    public static void writeImage(BufferedImage image, OutputStream out, ExportSettings settings) throws IOException {
+        // 编码结果直接缓存在内存中，不使用ImageIO默认的磁盘临时文件
+        try (ImageOutputStream imageOut = new MemoryCacheImageOutputStream(out)) {
+            if ("JPEG".equals(settings.getOutputFormat())) {
+                // 对于JPEG格式，确保没有透明度；已是不透明的RGB或灰度图时直接编码，不再复制
+                BufferedImage jpegImage = isJpegCompatible(image)
+                        ? image
+                        : WatermarkRenderer.toCompositeFormat(image, false);
+
+                ImageWriter writer = JPEG_WRITER.get();
+                ImageWriteParam param = jpegWriteParam(writer, settings);
+                IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(jpegImage), param);
+                applyChromaSubsampling(metadata, settings.getChromaSubsampling());
+                write(writer, new IIOImage(jpegImage, null, metadata), param, imageOut);
+            } else {
+                // PNG格式支持透明度
+                write(PNG_WRITER.get(), new IIOImage(image, null, null), null, imageOut);
+            }
+        }
+    }
+
+    private static boolean isJpegCompatible(BufferedImage image) {
+        int type = image.getType();
+        return !image.getColorModel().hasAlpha()
+                && (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_INT_RGB
+                || type == BufferedImage.TYPE_INT_BGR || type == BufferedImage.TYPE_BYTE_GRAY);
+    }
+
+    private static void write(ImageWriter writer, IIOImage image, ImageWriteParam param, ImageOutputStream out) throws IOException {
+        writer.setOutput(out);
+        try {
+            writer.write(null, image, param);
+        } finally {
+            // 清除输出和状态，编码器留给本线程的下一张图片使用
+            writer.reset();
+        }
+    }
+
+    private static ImageWriteParam jpegWriteParam(ImageWriter writer, ExportSettings settings) {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(Math.max(0, Math.min(100, settings.getQuality())) / 100f);
+        if (settings.isProgressive()) {
+            // 渐进式JPEG总是使用优化的Huffman表
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        } else if (param instanceof JPEGImageWriteParam) {
+            ((JPEGImageWriteParam) param).setOptimizeHuffmanTables(settings.isOptimizeHuffman());
+        }
+        return param;
+    }
+
+    // 编码器默认使用4:2:0，其他抽样方式通过修改帧头中亮度分量的抽样因子实现，色度分量保持1x1
+    private static void applyChromaSubsampling(IIOMetadata metadata, String subsampling) throws IIOInvalidTreeException {
+        int horizontal;
+        int vertical;
+        if ("4:4:4".equals(subsampling)) {
+            horizontal = 1;
+            vertical = 1;
+        } else if ("4:2:2".equals(subsampling)) {
+            horizontal = 2;
+            vertical = 1;
+        } else {
+            return;
+        }
+
+        IIOMetadataNode tree = (IIOMetadataNode) metadata.getAsTree(JPEG_METADATA_FORMAT);
+        NodeList components = tree.getElementsByTagName("componentSpec");
+        for (int i = 0; i < components.getLength(); i++) {
+            IIOMetadataNode component = (IIOMetadataNode) components.item(i);
+            boolean luma = i == 0;
+            component.setAttribute("HsamplingFactor", String.valueOf(luma ? horizontal : 1));
+            component.setAttribute("VsamplingFactor", String.valueOf(luma ? vertical : 1));
+        }
+        metadata.setFromTree(JPEG_METADATA_FORMAT, tree);
+    }
+}
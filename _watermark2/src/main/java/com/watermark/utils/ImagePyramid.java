@@ -0,0 +1,80 @@
+package com.watermark.utils;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 图片金字塔：为原图预先生成 1/2、1/4、1/8 ... 的缩小版本，
+ * 绘制时选用与显示比例最接近且不小于它的层级，避免每次都从原图大比例重采样。
+ * 第0层就是原图本身，由调用方持有，金字塔只保存缩小后的层级。
+ */
+public class ImagePyramid {
+    // 最小层级的长边不小于该尺寸
+    private static final int MIN_LEVEL_SIZE = 128;
+
+    private final int width;
+    private final int height;
+    // levels.get(i) 是第 i+1 层（1/2^(i+1)）
+    private final List<BufferedImage> levels = new ArrayList<>();
+
+    public ImagePyramid(BufferedImage source) {
+        this.width = source.getWidth();
+        this.height = source.getHeight();
+
+        BufferedImage current = source;
+        while (Math.max(current.getWidth(), current.getHeight()) / 2 >= MIN_LEVEL_SIZE) {
+            int levelWidth = Math.max(1, current.getWidth() / 2);
+            int levelHeight = Math.max(1, current.getHeight() / 2);
+            BufferedImage next = new BufferedImage(levelWidth, levelHeight,
+                    source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = next.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.drawImage(current, 0, 0, levelWidth, levelHeight, null);
+            g2d.dispose();
+            levels.add(next);
+            current = next;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 层级数量（含第0层原图）
+     */
+    public int getLevelCount() {
+        return levels.size() + 1;
+    }
+
+    /**
+     * 选择绘制到指定显示比例时使用的层级：比例不小于displayScale的最小层级
+     */
+    public int levelFor(double displayScale) {
+        int level = 0;
+        while (level + 1 < getLevelCount() && levelScale(level + 1) >= displayScale) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * 获取层级图片，第0层返回传入的原图
+     */
+    public BufferedImage getLevel(int level, BufferedImage source) {
+        return level == 0 ? source : levels.get(level - 1);
+    }
+
+    /**
+     * 层级相对原图的比例
+     */
+    public double levelScale(int level) {
+        return level == 0 ? 1.0 : (double) levels.get(level - 1).getWidth() / width;
+    }
+}
@@ -0,0 +1,866 @@
+package com.watermark.utils;
+
+import com.watermark.model.WatermarkTemplate;
+
+import javax.imageio.plugins.jpeg.JPEGHuffmanTable;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * JPEG局部重编码：JPEG源图导出为JPEG时，只对水印覆盖到的8x8块做反量化、合成和重新量化，
+ * 其余块的DCT系数原样保留，因此水印以外的区域没有任何画质损失，也省去了整幅图像的颜色转换和DCT。
+ * 量化表沿用源文件的，EXIF等标记段原样复制；块之间的熵编码比特流是连续的，所以Huffman数据整体重新写出。
+ * 只支持8位、单次扫描的顺序Huffman编码JPEG（灰度或YCbCr），其他情况返回null，由调用方走普通导出。
+ */
+public class JpegBlockReencoder {
+    // 之字形扫描序号到自然顺序（行优先）下标的映射
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    // 8点DCT的正交基：BASIS[u][x] = C(u)/2 * cos((2x+1)uπ/16)
+    private static final double[][] BASIS = new double[8][8];
+
+    static {
+        for (int u = 0; u < 8; u++) {
+            double scale = u == 0 ? Math.sqrt(0.125) : 0.5;
+            for (int x = 0; x < 8; x++) {
+                BASIS[u][x] = scale * Math.cos((2 * x + 1) * u * Math.PI / 16);
+            }
+        }
+    }
+
+    private JpegBlockReencoder() {
+    }
+
+    /**
+     * 对内存中的JPEG文件数据局部合成水印，返回新的文件数据；不是受支持的JPEG时返回null
+     */
+    public static byte[] reencode(byte[] source, WatermarkTemplate template, BufferedImage watermarkImage) {
+        if (source.length <= 4 || (source[0] & 0xFF) != 0xFF || (source[1] & 0xFF) != 0xD8) {
+            return null;
+        }
+
+        try {
+            Transcoder transcoder = new Transcoder(source);
+            Rectangle bounds = null;
+            BufferedImage overlay = null;
+            if (template != null) {
+                bounds = WatermarkRenderer.watermarkBounds(transcoder.width, transcoder.height, template, watermarkImage)
+                        .intersection(new Rectangle(0, 0, transcoder.width, transcoder.height));
+                if (!bounds.isEmpty()) {
+                    overlay = WatermarkRenderer.renderOverlay(transcoder.width, transcoder.height,
+                            template, watermarkImage, bounds);
+                }
+            }
+            return transcoder.transcode(overlay, bounds);
+        } catch (UnsupportedJpegException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解析一个JPEG文件并按块重新编码
+     */
+    private static class Transcoder {
+        private final byte[] data;
+        // SOS之前除DHT以外的所有标记段，原样输出
+        private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        private final int[][] quantTables = new int[4][];
+        private final HuffmanTable[] dcTables = new HuffmanTable[4];
+        private final HuffmanTable[] acTables = new HuffmanTable[4];
+
+        private Component[] components;
+        private int width;
+        private int height;
+        private int maxH;
+        private int maxV;
+        private int restartInterval;
+        private int adobeTransform = -1;
+        private int sosStart;
+        private int scanStart;
+        private int scanEnd;
+
+        // 解码位置
+        private int readPos;
+        private int readBuffer;
+        private int readBits;
+
+        // 编码输出
+        private ByteArrayOutputStream out;
+        private int writeBuffer;
+        private int writeBits;
+
+        // 合成用的临时缓冲区
+        private final double[] blockCoefficients = new double[64];
+        private final double[] blockTemp = new double[64];
+        private final double[] blockSamples = new double[64];
+
+        Transcoder(byte[] data) throws UnsupportedJpegException {
+            this.data = data;
+            parse();
+        }
+
+        private int u8(int pos) {
+            return data[pos] & 0xFF;
+        }
+
+        private int u16(int pos) {
+            return (u8(pos) << 8) | u8(pos + 1);
+        }
+
+        private void parse() throws UnsupportedJpegException {
+            if (data.length < 4 || u16(0) != 0xFFD8) {
+                throw new UnsupportedJpegException("不是JPEG文件");
+            }
+            header.write(data, 0, 2);
+
+            int pos = 2;
+            while (true) {
+                if (pos + 4 > data.length || u8(pos) != 0xFF) {
+                    throw new UnsupportedJpegException("标记段不完整");
+                }
+                int marker = u8(pos + 1);
+                if (marker == 0xFF) {
+                    // 填充字节
+                    pos++;
+                    continue;
+                }
+                int segmentEnd = pos + 2 + u16(pos + 2);
+                if (segmentEnd < pos + 4 || segmentEnd > data.length) {
+                    throw new UnsupportedJpegException("标记段越界");
+                }
+
+                switch (marker) {
+                    case 0xC0:
+                    case 0xC1:
+                        parseFrame(pos + 4, segmentEnd);
+                        break;
+                    case 0xC4:
+                        // Huffman表在编码时重新写出
+                        parseHuffmanTables(pos + 4, segmentEnd);
+                        pos = segmentEnd;
+                        continue;
+                    case 0xDB:
+                        parseQuantTables(pos + 4, segmentEnd);
+                        break;
+                    case 0xDD:
+                        require(pos + 4, 2, segmentEnd);
+                        restartInterval = u16(pos + 4);
+                        break;
+                    case 0xEE:
+                        if (segmentEnd - pos >= 16 && new String(data, pos + 4, 5, StandardCharsets.US_ASCII).equals("Adobe")) {
+                            adobeTransform = u8(pos + 15);
+                        }
+                        break;
+                    case 0xDA:
+                        sosStart = pos;
+                        parseScan(pos + 4, segmentEnd);
+                        scanStart = segmentEnd;
+                        findScanEnd();
+                        return;
+                    default:
+                        if (marker >= 0xC2 && marker <= 0xCF) {
+                            throw new UnsupportedJpegException("渐进式、无损或算术编码的JPEG");
+                        }
+                        if (marker == 0xD9) {
+                            throw new UnsupportedJpegException("没有图像数据");
+                        }
+                        break;
+                }
+                header.write(data, pos, segmentEnd - pos);
+                pos = segmentEnd;
+            }
+        }
+
+        // 标记段内从pos开始还需要count个字节，不足时按不支持的文件处理，由调用方回退到完整解码
+        private void require(int pos, int count, int end) throws UnsupportedJpegException {
+            if (pos + count > end) {
+                throw new UnsupportedJpegException("标记段数据不完整");
+            }
+        }
+
+        private void parseFrame(int pos, int end) throws UnsupportedJpegException {
+            require(pos, 6, end);
+            if (u8(pos) != 8) {
+                throw new UnsupportedJpegException("只支持8位精度");
+            }
+            height = u16(pos + 1);
+            width = u16(pos + 3);
+            int count = u8(pos + 5);
+            if (width == 0 || height == 0 || (count != 1 && count != 3)) {
+                throw new UnsupportedJpegException("不支持的帧参数");
+            }
+
+            require(pos + 6, count * 3, end);
+            components = new Component[count];
+            for (int i = 0; i < count; i++) {
+                int p = pos + 6 + i * 3;
+                Component component = new Component();
+                component.id = u8(p);
+                // 单分量图像的MCU固定为一个块，采样因子没有意义
+                component.h = count == 1 ? 1 : u8(p + 1) >> 4;
+                component.v = count == 1 ? 1 : u8(p + 1) & 15;
+                component.quantTable = u8(p + 2) & 3;
+                if (component.h < 1 || component.v < 1) {
+                    throw new UnsupportedJpegException("采样因子无效");
+                }
+                components[i] = component;
+                maxH = Math.max(maxH, component.h);
+                maxV = Math.max(maxV, component.v);
+            }
+            for (Component component : components) {
+                if (maxH % component.h != 0 || maxV % component.v != 0) {
+                    throw new UnsupportedJpegException("不支持非整数倍的色度采样");
+                }
+            }
+        }
+
+        private void parseQuantTables(int pos, int end) throws UnsupportedJpegException {
+            while (pos < end) {
+                int precision = u8(pos) >> 4;
+                int id = u8(pos) & 15;
+                if (id > 3) {
+                    throw new UnsupportedJpegException("量化表编号无效");
+                }
+                pos++;
+                require(pos, precision == 0 ? 64 : 128, end);
+                int[] table = new int[64];
+                for (int k = 0; k < 64; k++) {
+                    table[k] = precision == 0 ? u8(pos + k) : u16(pos + k * 2);
+                }
+                quantTables[id] = table;
+                pos += precision == 0 ? 64 : 128;
+            }
+        }
+
+        private void parseHuffmanTables(int pos, int end) throws UnsupportedJpegException {
+            while (pos < end) {
+                int tableClass = u8(pos) >> 4;
+                int id = u8(pos) & 15;
+                if (tableClass > 1 || id > 3) {
+                    throw new UnsupportedJpegException("Huffman表编号无效");
+                }
+                require(pos, 17, end);
+                short[] lengths = new short[16];
+                int total = 0;
+                for (int i = 0; i < 16; i++) {
+                    lengths[i] = (short) u8(pos + 1 + i);
+                    total += lengths[i];
+                }
+                require(pos + 17, total, end);
+                short[] values = new short[total];
+                for (int i = 0; i < total; i++) {
+                    values[i] = (short) u8(pos + 17 + i);
+                }
+                HuffmanTable table = new HuffmanTable(lengths, values);
+                if (tableClass == 0) {
+                    dcTables[id] = table;
+                } else {
+                    acTables[id] = table;
+                }
+                pos += 17 + total;
+            }
+        }
+
+        private void parseScan(int pos, int end) throws UnsupportedJpegException {
+            if (components == null) {
+                throw new UnsupportedJpegException("缺少帧头");
+            }
+            if (components.length == 3 && adobeTransform == 0) {
+                throw new UnsupportedJpegException("RGB编码的JPEG");
+            }
+            require(pos, 1, end);
+            int count = u8(pos);
+            if (count != components.length) {
+                throw new UnsupportedJpegException("多次扫描的JPEG");
+            }
+            require(pos + 1, count * 2 + 3, end);
+            for (int i = 0; i < count; i++) {
+                int id = u8(pos + 1 + i * 2);
+                int tables = u8(pos + 2 + i * 2);
+                Component component = components[i];
+                if (component.id != id) {
+                    throw new UnsupportedJpegException("扫描分量顺序与帧不一致");
+                }
+                component.dcDecode = dcTables[(tables >> 4) & 3];
+                component.acDecode = acTables[tables & 3];
+                if (component.dcDecode == null || component.acDecode == null || quantTables[component.quantTable] == null) {
+                    throw new UnsupportedJpegException("缺少Huffman表或量化表");
+                }
+                // 源文件的表缺少某些符号时（例如优化过的表），改用标准表编码，未改动块的系数不受影响
+                component.dcTableId = (tables >> 4) & 3;
+                component.acTableId = tables & 3;
+                component.dcEncode = component.dcDecode.canEncode(true) ? component.dcDecode
+                        : standardTable(true, component.dcTableId);
+                component.acEncode = component.acDecode.canEncode(false) ? component.acDecode
+                        : standardTable(false, component.acTableId);
+            }
+            int p = pos + 1 + count * 2;
+            if (u8(p) != 0 || u8(p + 1) != 63 || u8(p + 2) != 0) {
+                throw new UnsupportedJpegException("不是顺序编码的扫描");
+            }
+        }
+
+        // 熵编码数据结束于第一个非RST标记，之后必须是EOI
+        private void findScanEnd() throws UnsupportedJpegException {
+            int pos = scanStart;
+            while (pos + 1 < data.length) {
+                if (u8(pos) == 0xFF) {
+                    int next = u8(pos + 1);
+                    if (next == 0 || (next >= 0xD0 && next <= 0xD7)) {
+                        pos += 2;
+                        continue;
+                    }
+                    if (next != 0xFF) {
+                        break;
+                    }
+                }
+                pos++;
+            }
+            if (pos + 1 >= data.length || u8(pos + 1) != 0xD9) {
+                throw new UnsupportedJpegException("多次扫描的JPEG");
+            }
+            scanEnd = pos;
+        }
+
+        private HuffmanTable standardTable(boolean dc, int id) throws UnsupportedJpegException {
+            JPEGHuffmanTable table = dc
+                    ? (id == 0 ? JPEGHuffmanTable.StdDCLuminance : JPEGHuffmanTable.StdDCChrominance)
+                    : (id == 0 ? JPEGHuffmanTable.StdACLuminance : JPEGHuffmanTable.StdACChrominance);
+            return new HuffmanTable(table.getLengths(), table.getValues());
+        }
+
+        /**
+         * 逐个MCU解码系数，与水印相交的MCU在像素域合成后重新量化，然后立即重新熵编码
+         */
+        byte[] transcode(BufferedImage overlay, Rectangle bounds) throws UnsupportedJpegException {
+            int mcuWidth = maxH * 8;
+            int mcuHeight = maxV * 8;
+            int mcusPerLine = (width + mcuWidth - 1) / mcuWidth;
+            int mcusPerColumn = (height + mcuHeight - 1) / mcuHeight;
+
+            // 标记水印中有不透明像素的MCU
+            int[] overlayPixels = null;
+            boolean[] dirty = new boolean[mcusPerLine * mcusPerColumn];
+            if (overlay != null) {
+                overlayPixels = overlay.getRGB(0, 0, bounds.width, bounds.height, null, 0, bounds.width);
+                for (int y = 0; y < bounds.height; y++) {
+                    int row = (bounds.y + y) / mcuHeight * mcusPerLine;
+                    for (int x = 0; x < bounds.width; x++) {
+                        if ((overlayPixels[y * bounds.width + x] >>> 24) != 0) {
+                            dirty[row + (bounds.x + x) / mcuWidth] = true;
+                        }
+                    }
+                }
+            }
+
+            out = new ByteArrayOutputStream(data.length + 4096);
+            out.write(header.toByteArray(), 0, header.size());
+            writeHuffmanTables();
+            out.write(data, sosStart, scanStart - sosStart);
+
+            int blocksPerMcu = 0;
+            for (Component component : components) {
+                blocksPerMcu += component.h * component.v;
+            }
+            int[][] blocks = new int[blocksPerMcu][64];
+            MCUCompositor compositor = overlay != null ? new MCUCompositor(mcuWidth, mcuHeight) : null;
+
+            readPos = scanStart;
+            int mcuCount = 0;
+            int restartCount = 0;
+            for (int mcuY = 0; mcuY < mcusPerColumn; mcuY++) {
+                for (int mcuX = 0; mcuX < mcusPerLine; mcuX++) {
+                    if (restartInterval > 0 && mcuCount > 0 && mcuCount % restartInterval == 0) {
+                        restart();
+                        flushBits();
+                        out.write(0xFF);
+                        out.write(0xD0 + (restartCount++ & 7));
+                    }
+                    mcuCount++;
+
+                    int b = 0;
+                    for (Component component : components) {
+                        for (int i = component.h * component.v; i > 0; i--) {
+                            decodeBlock(blocks[b++], component);
+                        }
+                    }
+                    if (dirty[mcuY * mcusPerLine + mcuX]) {
+                        compositor.composite(blocks, mcuX * mcuWidth, mcuY * mcuHeight, overlayPixels, bounds);
+                    }
+                    b = 0;
+                    for (Component component : components) {
+                        for (int i = component.h * component.v; i > 0; i--) {
+                            encodeBlock(blocks[b++], component);
+                        }
+                    }
+                }
+            }
+            flushBits();
+
+            // EOI及其后的数据原样复制
+            out.write(data, scanEnd, data.length - scanEnd);
+            return out.toByteArray();
+        }
+
+        private void writeHuffmanTables() {
+            for (int tableClass = 0; tableClass < 2; tableClass++) {
+                boolean[] written = new boolean[4];
+                for (Component component : components) {
+                    int id = tableClass == 0 ? component.dcTableId : component.acTableId;
+                    if (written[id]) {
+                        continue;
+                    }
+                    written[id] = true;
+                    HuffmanTable table = tableClass == 0 ? component.dcEncode : component.acEncode;
+                    int length = 2 + 1 + 16 + table.values.length;
+                    out.write(0xFF);
+                    out.write(0xC4);
+                    out.write(length >> 8);
+                    out.write(length & 0xFF);
+                    out.write((tableClass << 4) | id);
+                    for (short count : table.lengths) {
+                        out.write(count);
+                    }
+                    for (short value : table.values) {
+                        out.write(value);
+                    }
+                }
+            }
+        }
+
+        // ---------- 解码 ----------
+
+        private int nextByte() {
+            if (readPos >= scanEnd) {
+                return 0;
+            }
+            int b = u8(readPos);
+            if (b == 0xFF) {
+                if (u8(readPos + 1) == 0) {
+                    readPos += 2;
+                    return 0xFF;
+                }
+                // 遇到标记时不再前进，用0补齐
+                return 0;
+            }
+            readPos++;
+            return b;
+        }
+
+        private void fill(int bits) {
+            while (readBits < bits) {
+                readBuffer = (readBuffer << 8) | nextByte();
+                readBits += 8;
+            }
+        }
+
+        private int receive(int bits) {
+            fill(bits);
+            readBits -= bits;
+            return (readBuffer >>> readBits) & ((1 << bits) - 1);
+        }
+
+        private int decodeSymbol(HuffmanTable table) throws UnsupportedJpegException {
+            fill(16);
+            int entry = table.lookup[(readBuffer >>> (readBits - 8)) & 0xFF];
+            if (entry != 0) {
+                readBits -= entry >> 8;
+                return entry & 0xFF;
+            }
+            for (int length = 9; length <= 16; length++) {
+                int code = (readBuffer >>> (readBits - length)) & ((1 << length) - 1);
+                if (code <= table.maxCode[length]) {
+                    readBits -= length;
+                    return table.values[table.valueOffset[length] + code - table.minCode[length]];
+                }
+            }
+            throw new UnsupportedJpegException("Huffman数据损坏");
+        }
+
+        private static int extend(int value, int bits) {
+            return value < (1 << (bits - 1)) ? value - (1 << bits) + 1 : value;
+        }
+
+        // 系数按之字形顺序存放，DC为绝对值
+        private void decodeBlock(int[] block, Component component) throws UnsupportedJpegException {
+            Arrays.fill(block, 0);
+            int category = decodeSymbol(component.dcDecode);
+            if (category > 11) {
+                throw new UnsupportedJpegException("DC数据损坏");
+            }
+            if (category > 0) {
+                component.dcDecodePrediction += extend(receive(category), category);
+            }
+            block[0] = component.dcDecodePrediction;
+
+            for (int k = 1; k < 64; ) {
+                int symbol = decodeSymbol(component.acDecode);
+                int run = symbol >> 4;
+                int size = symbol & 15;
+                if (size == 0) {
+                    if (run != 15) {
+                        break;
+                    }
+                    k += 16;
+                    continue;
+                }
+                k += run;
+                if (k > 63 || size > 10) {
+                    throw new UnsupportedJpegException("AC数据损坏");
+                }
+                block[k++] = extend(receive(size), size);
+            }
+        }
+
+        // 跳过RST标记并重置DC预测值
+        private void restart() {
+            readBuffer = 0;
+            readBits = 0;
+            while (readPos + 1 < scanEnd && !(u8(readPos) == 0xFF && u8(readPos + 1) >= 0xD0 && u8(readPos + 1) <= 0xD7)) {
+                readPos++;
+            }
+            readPos = Math.min(readPos + 2, scanEnd);
+            for (Component component : components) {
+                component.dcDecodePrediction = 0;
+                component.dcEncodePrediction = 0;
+            }
+        }
+
+        // ---------- 编码 ----------
+
+        private void emit(int code, int bits) {
+            writeBuffer = (writeBuffer << bits) | (code & ((1 << bits) - 1));
+            writeBits += bits;
+            while (writeBits >= 8) {
+                int b = (writeBuffer >> (writeBits - 8)) & 0xFF;
+                out.write(b);
+                if (b == 0xFF) {
+                    out.write(0);
+                }
+                writeBits -= 8;
+            }
+        }
+
+        // 用1填充到字节边界
+        private void flushBits() {
+            if (writeBits > 0) {
+                emit(0x7F, 8 - writeBits);
+            }
+            writeBuffer = 0;
+        }
+
+        private void emitSymbol(HuffmanTable table, int symbol) {
+            emit(table.codes[symbol], table.codeLengths[symbol]);
+        }
+
+        private static int category(int value) {
+            return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+        }
+
+        private void encodeBlock(int[] block, Component component) {
+            int diff = block[0] - component.dcEncodePrediction;
+            component.dcEncodePrediction = block[0];
+            int size = category(diff);
+            emitSymbol(component.dcEncode, size);
+            if (size > 0) {
+                emit(diff < 0 ? diff - 1 : diff, size);
+            }
+
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int value = block[k];
+                if (value == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    emitSymbol(component.acEncode, 0xF0);
+                    run -= 16;
+                }
+                size = category(value);
+                emitSymbol(component.acEncode, (run << 4) | size);
+                emit(value < 0 ? value - 1 : value, size);
+                run = 0;
+            }
+            if (run > 0) {
+                emitSymbol(component.acEncode, 0x00);
+            }
+        }
+
+        /**
+         * 在像素域中合成一个MCU：反量化、IDCT、转换为RGB与水印混合，再对有像素变化的块做DCT和量化
+         */
+        private class MCUCompositor {
+            private final int mcuWidth;
+            private final int mcuHeight;
+            // 每个分量在MCU内的采样值
+            private final double[][] planes;
+            // 合成后每个像素的Y/Cb/Cr（全分辨率）
+            private final double[][] pixels;
+            private final boolean[] changed;
+
+            MCUCompositor(int mcuWidth, int mcuHeight) {
+                this.mcuWidth = mcuWidth;
+                this.mcuHeight = mcuHeight;
+                planes = new double[components.length][];
+                pixels = new double[components.length][mcuWidth * mcuHeight];
+                for (int c = 0; c < components.length; c++) {
+                    planes[c] = new double[components[c].h * components[c].v * 64];
+                }
+                changed = new boolean[mcuWidth * mcuHeight];
+            }
+
+            void composite(int[][] blocks, int x0, int y0, int[] overlayPixels, Rectangle bounds) {
+                int b = 0;
+                for (int c = 0; c < components.length; c++) {
+                    Component component = components[c];
+                    int stride = component.h * 8;
+                    for (int by = 0; by < component.v; by++) {
+                        for (int bx = 0; bx < component.h; bx++) {
+                            inverseDct(blocks[b++], quantTables[component.quantTable], planes[c], by * 8 * stride + bx * 8, stride);
+                        }
+                    }
+                }
+
+                boolean gray = components.length == 1;
+                Arrays.fill(changed, false);
+                for (int py = 0; py < mcuHeight; py++) {
+                    for (int px = 0; px < mcuWidth; px++) {
+                        int p = py * mcuWidth + px;
+                        for (int c = 0; c < components.length; c++) {
+                            Component component = components[c];
+                            int sx = px / (maxH / component.h);
+                            int sy = py / (maxV / component.v);
+                            pixels[c][p] = planes[c][sy * component.h * 8 + sx];
+                        }
+
+                        int ox = x0 + px - bounds.x;
+                        int oy = y0 + py - bounds.y;
+                        if (ox < 0 || oy < 0 || ox >= bounds.width || oy >= bounds.height) {
+                            continue;
+                        }
+                        int argb = overlayPixels[oy * bounds.width + ox];
+                        int alpha = argb >>> 24;
+                        if (alpha == 0) {
+                            continue;
+                        }
+                        double a = alpha / 255.0;
+                        double or = (argb >> 16) & 0xFF;
+                        double og = (argb >> 8) & 0xFF;
+                        double ob = argb & 0xFF;
+                        if (gray) {
+                            double luma = 0.299 * or + 0.587 * og + 0.114 * ob;
+                            pixels[0][p] += (luma - pixels[0][p]) * a;
+                        } else {
+                            double y = pixels[0][p];
+                            double cb = pixels[1][p] - 128;
+                            double cr = pixels[2][p] - 128;
+                            double r = y + 1.402 * cr;
+                            double g = y - 0.344136 * cb - 0.714136 * cr;
+                            double bl = y + 1.772 * cb;
+                            r += (or - r) * a;
+                            g += (og - g) * a;
+                            bl += (ob - bl) * a;
+                            pixels[0][p] = 0.299 * r + 0.587 * g + 0.114 * bl;
+                            pixels[1][p] = -0.168736 * r - 0.331264 * g + 0.5 * bl + 128;
+                            pixels[2][p] = 0.5 * r - 0.418688 * g - 0.081312 * bl + 128;
+                        }
+                        changed[p] = true;
+                    }
+                }
+
+                // 只有覆盖范围内有像素变化的块才重新量化，其余块保留原系数
+                b = 0;
+                for (int c = 0; c < components.length; c++) {
+                    Component component = components[c];
+                    int fx = maxH / component.h;
+                    int fy = maxV / component.v;
+                    for (int by = 0; by < component.v; by++) {
+                        for (int bx = 0; bx < component.h; bx++) {
+                            int[] block = blocks[b++];
+                            int left = bx * 8 * fx;
+                            int top = by * 8 * fy;
+                            if (!anyChanged(left, top, 8 * fx, 8 * fy)) {
+                                continue;
+                            }
+                            // 子采样分量取覆盖像素的平均值
+                            for (int sy = 0; sy < 8; sy++) {
+                                for (int sx = 0; sx < 8; sx++) {
+                                    double sum = 0;
+                                    for (int dy = 0; dy < fy; dy++) {
+                                        int row = (top + sy * fy + dy) * mcuWidth + left + sx * fx;
+                                        for (int dx = 0; dx < fx; dx++) {
+                                            sum += pixels[c][row + dx];
+                                        }
+                                    }
+                                    blockSamples[sy * 8 + sx] = sum / (fx * fy);
+                                }
+                            }
+                            forwardDct(blockSamples, quantTables[component.quantTable], block);
+                        }
+                    }
+                }
+            }
+
+            private boolean anyChanged(int left, int top, int w, int h) {
+                for (int y = top; y < top + h; y++) {
+                    for (int x = left; x < left + w; x++) {
+                        if (changed[y * mcuWidth + x]) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            }
+        }
+
+        // 反量化并做二维IDCT，结果加上128写入out
+        private void inverseDct(int[] block, int[] quant, double[] out, int offset, int stride) {
+            double[] coefficients = blockCoefficients;
+            Arrays.fill(coefficients, 0);
+            for (int k = 0; k < 64; k++) {
+                if (block[k] != 0) {
+                    coefficients[ZIGZAG[k]] = block[k] * quant[k];
+                }
+            }
+            // 先对每一行（水平频率）变换，再对每一列
+            for (int v = 0; v < 8; v++) {
+                for (int x = 0; x < 8; x++) {
+                    double sum = 0;
+                    for (int u = 0; u < 8; u++) {
+                        sum += BASIS[u][x] * coefficients[v * 8 + u];
+                    }
+                    blockTemp[v * 8 + x] = sum;
+                }
+            }
+            for (int y = 0; y < 8; y++) {
+                for (int x = 0; x < 8; x++) {
+                    double sum = 0;
+                    for (int v = 0; v < 8; v++) {
+                        sum += BASIS[v][y] * blockTemp[v * 8 + x];
+                    }
+                    out[offset + y * stride + x] = sum + 128;
+                }
+            }
+        }
+
+        // 二维DCT并用源文件的量化表量化，结果按之字形顺序写入block
+        private void forwardDct(double[] samples, int[] quant, int[] block) {
+            for (int y = 0; y < 8; y++) {
+                for (int u = 0; u < 8; u++) {
+                    double sum = 0;
+                    for (int x = 0; x < 8; x++) {
+                        sum += BASIS[u][x] * (samples[y * 8 + x] - 128);
+                    }
+                    blockTemp[y * 8 + u] = sum;
+                }
+            }
+            for (int k = 0; k < 64; k++) {
+                int v = ZIGZAG[k] >> 3;
+                int u = ZIGZAG[k] & 7;
+                double sum = 0;
+                for (int y = 0; y < 8; y++) {
+                    sum += BASIS[v][y] * blockTemp[y * 8 + u];
+                }
+                int limit = k == 0 ? 2047 : 1023;
+                block[k] = Math.max(-limit, Math.min(limit, (int) Math.round(sum / quant[k])));
+            }
+        }
+    }
+
+    private static class Component {
+        int id;
+        int h;
+        int v;
+        int quantTable;
+        int dcTableId;
+        int acTableId;
+        HuffmanTable dcDecode;
+        HuffmanTable acDecode;
+        HuffmanTable dcEncode;
+        HuffmanTable acEncode;
+        int dcDecodePrediction;
+        int dcEncodePrediction;
+    }
+
+    /**
+     * 规范Huffman表，同时提供解码（8位查找表加逐位比较）和编码所需的数据
+     */
+    private static class HuffmanTable {
+        final short[] lengths;
+        final short[] values;
+        final int[] maxCode = new int[17];
+        final int[] minCode = new int[17];
+        final int[] valueOffset = new int[17];
+        // 长度不超过8位的码字：(码长 << 8) | 符号
+        final int[] lookup = new int[256];
+        final int[] codes = new int[256];
+        final int[] codeLengths = new int[256];
+
+        HuffmanTable(short[] lengths, short[] values) throws UnsupportedJpegException {
+            this.lengths = lengths;
+            this.values = values;
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                valueOffset[length] = k;
+                minCode[length] = code;
+                for (int i = 0; i < lengths[length - 1]; i++) {
+                    if (k >= values.length || code >= (1 << length)) {
+                        throw new UnsupportedJpegException("Huffman表无效");
+                    }
+                    int symbol = values[k] & 0xFF;
+                    codes[symbol] = code;
+                    codeLengths[symbol] = length;
+                    if (length <= 8) {
+                        int shift = 8 - length;
+                        for (int j = code << shift; j < (code + 1) << shift; j++) {
+                            lookup[j] = (length << 8) | symbol;
+                        }
+                    }
+                    code++;
+                    k++;
+                }
+                maxCode[length] = lengths[length - 1] > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+        }
+
+        // 是否包含重新量化后的块可能用到的所有符号
+        boolean canEncode(boolean dc) {
+            if (dc) {
+                for (int category = 0; category <= 11; category++) {
+                    if (codeLengths[category] == 0) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (codeLengths[0x00] == 0 || codeLengths[0xF0] == 0) {
+                return false;
+            }
+            for (int run = 0; run < 16; run++) {
+                for (int size = 1; size <= 10; size++) {
+                    if (codeLengths[(run << 4) | size] == 0) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class UnsupportedJpegException extends Exception {
+        UnsupportedJpegException(String message) {
+            super(message);
+        }
+    }
+}
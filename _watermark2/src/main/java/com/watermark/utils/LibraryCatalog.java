@@ -0,0 +1,485 @@
+package com.watermark.utils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 图片库目录：持久化保存每个源文件的尺寸、修改时间、大小、内容哈希、EXIF信息（方向、拍摄时间、相机）和压缩缩略图。
+ * 数据文件只追加写入；索引文件是内存映射的开放寻址哈希表，按路径哈希定位记录偏移量。
+ * 再次导入已见过的文件时可以直接从目录读取缩略图，无需解码原图。
+ */
+public class LibraryCatalog {
+    private static final String CATALOG_DIR = "catalog";
+    private static final String DATA_FILE = "catalog.dat";
+    private static final String INDEX_FILE = "catalog.idx";
+
+    // 索引文件头：魔数、版本、槽位数、已用槽位数
+    private static final int INDEX_MAGIC = 0x57434958;
+    private static final int INDEX_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    // 每个槽位：路径哈希(long，0表示空) + 记录偏移量(long)
+    private static final int SLOT_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    // 第2版增加了EXIF方向和相机厂商、型号；第1版的记录仍可读取，但没有这些信息
+    private static final int RECORD_VERSION = 2;
+
+    private static LibraryCatalog instance;
+
+    private final File dataFile;
+    private final File indexFile;
+    private FileChannel dataChannel;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int count;
+    private boolean available = false;
+
+    // 测试中直接指定目录，程序中通过getInstance使用默认目录
+    LibraryCatalog(File directory) {
+        this.dataFile = new File(directory, DATA_FILE);
+        this.indexFile = new File(directory, INDEX_FILE);
+        try {
+            if (!directory.exists()) {
+                directory.mkdirs();
+            }
+            open();
+            available = true;
+        } catch (IOException e) {
+            // 目录不可用时退化为不缓存，不影响正常导入
+            System.err.println("无法打开图片库目录：" + e.getMessage());
+            closeQuietly();
+        }
+    }
+
+    public static synchronized LibraryCatalog getInstance() {
+        if (instance == null) {
+            instance = new LibraryCatalog(new File(CATALOG_DIR));
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::close, "catalog-close"));
+        }
+        return instance;
+    }
+
+    /**
+     * 查找文件的目录记录，不存在时返回null。调用方需用 Entry.matches 判断记录是否过期
+     */
+    public synchronized Entry lookup(File file) {
+        if (!available) {
+            return null;
+        }
+        String path = file.getAbsolutePath();
+        long hash = hashPath(path);
+        try {
+            for (int i = 0, slot = slotOf(hash); i < capacity; i++, slot = (slot + 1) % capacity) {
+                long slotHash = index.getLong(slotPosition(slot));
+                if (slotHash == 0) {
+                    return null;
+                }
+                if (slotHash == hash) {
+                    Entry entry = readRecord(index.getLong(slotPosition(slot) + 8));
+                    if (entry.getPath().equals(path)) {
+                        return entry;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("读取图片库目录失败：" + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 追加一条记录，同一路径的旧记录会被新记录覆盖
+     */
+    public synchronized void put(Entry entry) {
+        if (!available) {
+            return;
+        }
+        try {
+            long offset = appendRecord(entry);
+            if (count + 1 > capacity * MAX_LOAD_FACTOR) {
+                resize(capacity * 2);
+            }
+            insertSlot(hashPath(entry.getPath()), entry.getPath(), offset);
+        } catch (IOException e) {
+            System.err.println("写入图片库目录失败：" + e.getMessage());
+        }
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized void close() {
+        if (index != null) {
+            index.force();
+        }
+        closeQuietly();
+        available = false;
+    }
+
+    private void open() throws IOException {
+        dataChannel = FileChannel.open(dataFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        boolean rebuild = !indexFile.exists() || indexFile.length() < HEADER_SIZE;
+        indexChannel = FileChannel.open(indexFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (!rebuild) {
+            MappedByteBuffer header = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            int storedCapacity = header.getInt(8);
+            rebuild = header.getInt(0) != INDEX_MAGIC || header.getInt(4) != INDEX_VERSION
+                    || storedCapacity <= 0 || indexFile.length() < HEADER_SIZE + (long) storedCapacity * SLOT_SIZE;
+            if (!rebuild) {
+                capacity = storedCapacity;
+                count = header.getInt(12);
+                index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+            }
+        }
+
+        if (rebuild) {
+            rebuildIndex();
+        }
+    }
+
+    // 索引缺失或损坏时，顺序扫描数据文件重建索引，并截掉末尾不完整的记录
+    private void rebuildIndex() throws IOException {
+        mapEmptyIndex(INITIAL_CAPACITY);
+
+        long position = 0;
+        long size = dataChannel.size();
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        while (position + 4 <= size) {
+            lengthBuffer.clear();
+            readFully(lengthBuffer, position);
+            int length = lengthBuffer.getInt(0);
+            if (length <= 0 || position + 4 + length > size) {
+                break;
+            }
+            Entry entry;
+            try {
+                entry = readRecord(position);
+            } catch (IOException e) {
+                break;
+            }
+            if (count + 1 > capacity * MAX_LOAD_FACTOR) {
+                resize(capacity * 2);
+            }
+            insertSlot(hashPath(entry.getPath()), entry.getPath(), position);
+            position += 4 + length;
+        }
+
+        if (position < size) {
+            dataChannel.truncate(position);
+        }
+    }
+
+    private void mapEmptyIndex(int newCapacity) throws IOException {
+        indexChannel.truncate(0);
+        capacity = newCapacity;
+        count = 0;
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, INDEX_VERSION);
+        index.putInt(8, capacity);
+        index.putInt(12, count);
+    }
+
+    // 扩容：取出所有槽位后按新容量重新插入
+    private void resize(int newCapacity) throws IOException {
+        long[] hashes = new long[count];
+        long[] offsets = new long[count];
+        int n = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            long slotHash = index.getLong(slotPosition(slot));
+            if (slotHash != 0) {
+                hashes[n] = slotHash;
+                offsets[n] = index.getLong(slotPosition(slot) + 8);
+                n++;
+            }
+        }
+
+        mapEmptyIndex(newCapacity);
+        for (int i = 0; i < n; i++) {
+            int slot = slotOf(hashes[i]);
+            while (index.getLong(slotPosition(slot)) != 0) {
+                slot = (slot + 1) % capacity;
+            }
+            writeSlot(slot, hashes[i], offsets[i]);
+            count++;
+        }
+        index.putInt(12, count);
+    }
+
+    private void insertSlot(long hash, String path, long offset) throws IOException {
+        int slot = slotOf(hash);
+        while (true) {
+            long slotHash = index.getLong(slotPosition(slot));
+            if (slotHash == 0) {
+                writeSlot(slot, hash, offset);
+                count++;
+                index.putInt(12, count);
+                return;
+            }
+            if (slotHash == hash && readRecord(index.getLong(slotPosition(slot) + 8)).getPath().equals(path)) {
+                writeSlot(slot, hash, offset);
+                return;
+            }
+            slot = (slot + 1) % capacity;
+        }
+    }
+
+    private void writeSlot(int slot, long hash, long offset) {
+        index.putLong(slotPosition(slot), hash);
+        index.putLong(slotPosition(slot) + 8, offset);
+    }
+
+    private int slotOf(long hash) {
+        return (int) ((hash & Long.MAX_VALUE) % capacity);
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    // 64位FNV-1a哈希，0保留给空槽位
+    private static long hashPath(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xFF);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private long appendRecord(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + entry.thumbnailData.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // 记录长度占位
+        out.writeByte(RECORD_VERSION);
+        out.writeUTF(entry.path);
+        out.writeLong(entry.lastModified);
+        out.writeLong(entry.fileSize);
+        out.writeInt(entry.width);
+        out.writeInt(entry.height);
+        out.writeShort(entry.contentHash.length);
+        out.write(entry.contentHash);
+        out.writeLong(entry.captureTime);
+        out.writeByte(entry.orientation);
+        out.writeUTF(entry.make != null ? entry.make : "");
+        out.writeUTF(entry.model != null ? entry.model : "");
+        out.writeUTF(entry.thumbnailFormat);
+        out.writeInt(entry.thumbnailData.length);
+        out.write(entry.thumbnailData);
+        out.flush();
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(0, buffer.remaining() - 4);
+
+        long offset = dataChannel.size();
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += dataChannel.write(buffer, position);
+        }
+        return offset;
+    }
+
+    private Entry readRecord(long offset) throws IOException {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        readFully(lengthBuffer, offset);
+        int length = lengthBuffer.getInt(0);
+        if (length <= 0 || offset + 4 + length > dataChannel.size()) {
+            throw new IOException("图片库记录已损坏，偏移量 " + offset);
+        }
+
+        ByteBuffer recordBuffer = ByteBuffer.allocate(length);
+        readFully(recordBuffer, offset + 4);
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(recordBuffer.array()))) {
+            int version = in.readByte();
+            if (version != 1 && version != RECORD_VERSION) {
+                throw new IOException("不支持的图片库记录版本，偏移量 " + offset);
+            }
+            Entry entry = new Entry();
+            entry.path = in.readUTF();
+            entry.lastModified = in.readLong();
+            entry.fileSize = in.readLong();
+            entry.width = in.readInt();
+            entry.height = in.readInt();
+            entry.contentHash = new byte[in.readShort()];
+            in.readFully(entry.contentHash);
+            entry.captureTime = in.readLong();
+            if (version >= 2) {
+                entry.orientation = in.readByte();
+                entry.make = emptyToNull(in.readUTF());
+                entry.model = emptyToNull(in.readUTF());
+            }
+            entry.thumbnailFormat = in.readUTF();
+            entry.thumbnailData = new byte[in.readInt()];
+            in.readFully(entry.thumbnailData);
+            return entry;
+        } catch (EOFException e) {
+            throw new IOException("图片库记录不完整，偏移量 " + offset, e);
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = dataChannel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            if (dataChannel != null) {
+                dataChannel.close();
+            }
+            if (indexChannel != null) {
+                indexChannel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 目录中的一条记录
+     */
+    public static class Entry {
+        private String path;
+        private long lastModified;
+        private long fileSize;
+        private int width;
+        private int height;
+        private byte[] contentHash;
+        // 拍摄时间（毫秒），未知时为-1
+        private long captureTime = -1;
+        // EXIF方向（1-8），第1版记录中没有时为0
+        private int orientation;
+        private String make;
+        private String model;
+        private String thumbnailFormat;
+        private byte[] thumbnailData;
+
+        private Entry() {
+        }
+
+        /**
+         * 根据源文件当前状态创建记录，exif为null表示不是JPEG文件。缩略图带透明通道时以PNG压缩，否则以JPEG压缩
+         */
+        public static Entry create(File file, long lastModified, long fileSize, int width, int height,
+                                   byte[] contentHash, ExifReader.ExifData exif, BufferedImage thumbnail) throws IOException {
+            Entry entry = new Entry();
+            entry.path = file.getAbsolutePath();
+            entry.lastModified = lastModified;
+            entry.fileSize = fileSize;
+            entry.width = width;
+            entry.height = height;
+            entry.contentHash = contentHash;
+            entry.captureTime = exif != null ? exif.getCaptureTime() : -1;
+            entry.orientation = exif != null ? exif.getOrientation() : 1;
+            entry.make = exif != null ? exif.getMake() : null;
+            entry.model = exif != null ? exif.getModel() : null;
+            entry.thumbnailFormat = thumbnail.getColorModel().hasAlpha() ? "png" : "jpeg";
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 * 1024);
+            if (!ImageIO.write(thumbnail, entry.thumbnailFormat, bytes)) {
+                throw new IOException("无法压缩缩略图");
+            }
+            entry.thumbnailData = bytes.toByteArray();
+            return entry;
+        }
+
+        /**
+         * 记录是否仍与文件当前的修改时间和大小一致
+         */
+        public boolean matches(File file) {
+            return matches(file.lastModified(), file.length());
+        }
+
+        /**
+         * 记录是否与调用方已取得的修改时间和大小一致
+         */
+        public boolean matches(long lastModified, long fileSize) {
+            return this.lastModified == lastModified && this.fileSize == fileSize;
+        }
+
+        /**
+         * 解压缩略图（只解码几KB的小图）
+         */
+        public BufferedImage decodeThumbnail() throws IOException {
+            return ImageIO.read(new ByteArrayInputStream(thumbnailData));
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * 是否记录了内容哈希，只读取嵌入缩略图生成的记录没有内容哈希
+         */
+        public boolean hasContentHash() {
+            return contentHash.length > 0;
+        }
+
+        public byte[] getContentHash() {
+            return contentHash.clone();
+        }
+
+        public long getCaptureTime() {
+            return captureTime;
+        }
+
+        /**
+         * 是否记录了EXIF方向和相机信息，第1版的记录没有
+         */
+        public boolean hasExif() {
+            return orientation > 0;
+        }
+
+        /**
+         * 以记录中的信息构造EXIF数据（不含嵌入缩略图），不必再读取源文件
+         */
+        public ExifReader.ExifData toExif() {
+            return new ExifReader.ExifData(width, height, orientation, captureTime, make, model);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.watermark.utils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 原始图片缓存：按文件路径和修改时间缓存解码后的原图，供预览等需要反复读取原图的地方共享。
+ * 超出字节预算时按LRU淘汰，并且只通过软引用持有，内存紧张时可被垃圾回收。
+ * 返回的图片是共享的，调用方只能读取，不能在上面绘制。
+ */
+public class SourceImageCache {
+    // 默认预算：512MB 与最大堆的1/4 取较小值
+    private static final long DEFAULT_BUDGET_BYTES = Math.min(512L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 4);
+
+    private static SourceImageCache instance;
+
+    private final long budgetBytes;
+    private final LinkedHashMap<String, CachedImage> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes = 0;
+
+    public SourceImageCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public static synchronized SourceImageCache getInstance() {
+        if (instance == null) {
+            instance = new SourceImageCache(DEFAULT_BUDGET_BYTES);
+        }
+        return instance;
+    }
+
+    /**
+     * 获取文件的原图，文件修改后自动重新解码
+     */
+    public BufferedImage get(File file) throws IOException {
+        String key = file.getAbsolutePath() + "@" + file.lastModified();
+        BufferedImage image = lookup(key);
+        if (image != null) {
+            return image;
+        }
+
+        // 在锁外解码，避免大图解码阻塞其他线程读取缓存
+        image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("无法识别的图片格式");
+        }
+        store(key, file.getAbsolutePath(), image);
+        return image;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private synchronized BufferedImage lookup(String key) {
+        CachedImage cached = entries.get(key);
+        if (cached == null) {
+            return null;
+        }
+        BufferedImage image = cached.reference.get();
+        if (image == null) {
+            // 已被垃圾回收
+            entries.remove(key);
+            usedBytes -= cached.bytes;
+        }
+        return image;
+    }
+
+    private synchronized void store(String key, String path, BufferedImage image) {
+        // 同一文件只保留最新版本
+        Iterator<CachedImage> stale = entries.values().iterator();
+        while (stale.hasNext()) {
+            CachedImage cached = stale.next();
+            if (cached.path.equals(path)) {
+                usedBytes -= cached.bytes;
+                stale.remove();
+            }
+        }
+
+        CachedImage cached = new CachedImage(path, image);
+        entries.put(key, cached);
+        usedBytes += cached.bytes;
+
+        // 淘汰最久未使用的原图，直到回到预算以内（至少保留刚放入的一张）
+        Iterator<Map.Entry<String, CachedImage>> iterator = entries.entrySet().iterator();
+        while (usedBytes > budgetBytes && entries.size() > 1 && iterator.hasNext()) {
+            Map.Entry<String, CachedImage> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            usedBytes -= eldest.getValue().bytes;
+            iterator.remove();
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    private static class CachedImage {
+        private final String path;
+        private final SoftReference<BufferedImage> reference;
+        private final long bytes;
+
+        CachedImage(String path, BufferedImage image) {
+            this.path = path;
+            this.reference = new SoftReference<>(image);
+            this.bytes = sizeOf(image);
+        }
+    }
+}
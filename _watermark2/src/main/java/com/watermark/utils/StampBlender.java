@@ -0,0 +1,174 @@
+package com.watermark.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * 图章混合内核：把预乘alpha的ARGB图章直接在像素数组上以SRC_OVER方式混合到目标图片，
+ * 只处理INT_RGB、INT_ARGB和INT_ARGB_PRE目标。
+ * 图章每行只处理预先算好的非透明区间，旋转后外接矩形中大片透明的角落不会被访问。
+ * 其他类型返回false，由调用方改用Graphics2D绘制。3BYTE_BGR（JPEG导出的合成格式）逐字节拆装像素，
+ * 混合大面积的图片水印时比Graphics2D的原生循环慢，也交给Graphics2D；两者的对比见测试目录中的StampBlenderBenchmark。
+ */
+public class StampBlender {
+
+    private StampBlender() {
+    }
+
+    /**
+     * 计算图章每一行非透明像素的区间：spans[2*row]为起始列，spans[2*row+1]为结束列（不含），整行透明时两者相等
+     */
+    public static int[] opaqueSpans(BufferedImage stamp) {
+        int width = stamp.getWidth();
+        int height = stamp.getHeight();
+        int[] spans = new int[height * 2];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            stamp.getRaster().getDataElements(0, y, width, 1, row);
+            int start = 0;
+            while (start < width && (row[start] >>> 24) == 0) {
+                start++;
+            }
+            int end = width;
+            while (end > start && (row[end - 1] >>> 24) == 0) {
+                end--;
+            }
+            spans[y * 2] = start;
+            spans[y * 2 + 1] = end;
+        }
+        return spans;
+    }
+
+    /**
+     * 把图章混合到目标图片中，(x, y) 为图章左上角在目标中的坐标，超出目标的部分被裁剪。
+     * spans为opaqueSpans的结果
+     */
+    public static boolean blend(BufferedImage stamp, int[] spans, BufferedImage target, int x, int y) {
+        if (stamp.getType() != BufferedImage.TYPE_INT_ARGB_PRE) {
+            return false;
+        }
+        int targetType = target.getType();
+        if (targetType != BufferedImage.TYPE_INT_RGB && targetType != BufferedImage.TYPE_INT_ARGB
+                && targetType != BufferedImage.TYPE_INT_ARGB_PRE) {
+            return false;
+        }
+
+        // 裁剪到目标范围
+        int left = Math.max(0, x);
+        int top = Math.max(0, y);
+        int right = Math.min(target.getWidth(), x + stamp.getWidth());
+        int bottom = Math.min(target.getHeight(), y + stamp.getHeight());
+        if (left >= right || top >= bottom) {
+            return true;
+        }
+
+        Raster stampRaster = stamp.getRaster();
+        int[] src = ((DataBufferInt) stampRaster.getDataBuffer()).getData();
+        int srcStride = ((SinglePixelPackedSampleModel) stampRaster.getSampleModel()).getScanlineStride();
+        int srcBase = indexOf(stampRaster, 0, 0, srcStride, 1);
+
+        Raster targetRaster = target.getRaster();
+        int[] dst = ((DataBufferInt) targetRaster.getDataBuffer()).getData();
+        int dstStride = ((SinglePixelPackedSampleModel) targetRaster.getSampleModel()).getScanlineStride();
+        for (int row = top; row < bottom; row++) {
+            int start = Math.max(left, x + spans[(row - y) * 2]);
+            int end = Math.min(right, x + spans[(row - y) * 2 + 1]);
+            if (start >= end) {
+                continue;
+            }
+            int srcIndex = srcBase + (row - y) * srcStride + (start - x);
+            int dstIndex = indexOf(targetRaster, start, row, dstStride, 1);
+            if (targetType == BufferedImage.TYPE_INT_ARGB) {
+                blendRowArgb(src, srcIndex, dst, dstIndex, end - start);
+            } else {
+                blendRowPremultiplied(src, srcIndex, dst, dstIndex, end - start, targetType == BufferedImage.TYPE_INT_RGB);
+            }
+        }
+        return true;
+    }
+
+    // 像素 (x, y) 在数据数组中的下标，考虑子图的偏移
+    private static int indexOf(Raster raster, int x, int y, int stride, int pixelStride) {
+        return raster.getDataBuffer().getOffset()
+                + (y - raster.getSampleModelTranslateY()) * stride
+                + (x - raster.getSampleModelTranslateX()) * pixelStride;
+    }
+
+    // 四舍五入的 value / 255，value 在 [0, 255*255] 范围内
+    private static int div255(int value) {
+        value += 128;
+        return (value + (value >> 8)) >> 8;
+    }
+
+    /**
+     * 把不透明像素的RGB三个分量同时乘以 inverse/255（四舍五入）。
+     * 红、蓝两个分量放在同一个int的两个16位通道中一起相乘，绿色单独一次，每个像素只需两次乘法
+     */
+    private static int scaleRgb(int pixel, int inverse) {
+        int redBlue = (pixel & 0xFF00FF) * inverse + 0x800080;
+        redBlue = ((redBlue + ((redBlue >> 8) & 0xFF00FF)) >> 8) & 0xFF00FF;
+        int green = (pixel & 0xFF00) * inverse + 0x8000;
+        green = ((green + ((green >> 8) & 0xFF00)) >> 8) & 0xFF00;
+        return redBlue | green;
+    }
+
+    /**
+     * 把预乘像素的四个分量同时乘以 inverse/255（四舍五入），alpha和绿色、红色和蓝色各占一个int的两个16位通道
+     */
+    private static int scaleArgb(int pixel, int inverse) {
+        int redBlue = (pixel & 0xFF00FF) * inverse + 0x800080;
+        redBlue = ((redBlue + ((redBlue >> 8) & 0xFF00FF)) >> 8) & 0xFF00FF;
+        int alphaGreen = ((pixel >>> 8) & 0xFF00FF) * inverse + 0x800080;
+        alphaGreen = (alphaGreen + ((alphaGreen >>> 8) & 0xFF00FF)) & 0xFF00FF00;
+        return alphaGreen | redBlue;
+    }
+
+    // 目标为不透明的INT_RGB或预乘的INT_ARGB_PRE：out = src + dst * (1 - srcAlpha)
+    private static void blendRowPremultiplied(int[] src, int srcIndex, int[] dst, int dstIndex, int width, boolean opaque) {
+        for (int i = 0; i < width; i++) {
+            int s = src[srcIndex + i];
+            int sa = s >>> 24;
+            if (sa == 0) {
+                continue;
+            }
+            if (sa == 255) {
+                dst[dstIndex + i] = s;
+                continue;
+            }
+            // 预乘的源分量不超过其alpha，相加不会进位到相邻分量
+            int blended = s + scaleArgb(dst[dstIndex + i], 255 - sa);
+            dst[dstIndex + i] = opaque ? blended | 0xFF000000 : blended;
+        }
+    }
+
+    // 目标为非预乘的INT_ARGB，不透明像素走快速路径
+    private static void blendRowArgb(int[] src, int srcIndex, int[] dst, int dstIndex, int width) {
+        for (int i = 0; i < width; i++) {
+            int s = src[srcIndex + i];
+            int sa = s >>> 24;
+            if (sa == 0) {
+                continue;
+            }
+            int d = dst[dstIndex + i];
+            int da = d >>> 24;
+            int inverse = 255 - sa;
+            if (sa == 255 || da == 255) {
+                int a = sa == 255 ? 255 : da;
+                dst[dstIndex + i] = (a << 24) | ((s & 0xFFFFFF) + scaleRgb(d, inverse));
+                continue;
+            }
+
+            // 半透明目标：先按预乘计算，再除以结果alpha
+            int weight = div255(da * inverse);
+            int a = sa + weight;
+            int premultiplied = (s & 0xFFFFFF) + scaleRgb(d, weight);
+            int half = a >> 1;
+            dst[dstIndex + i] = (a << 24)
+                    | (Math.min(255, (((premultiplied >> 16) & 0xFF) * 255 + half) / a) << 16)
+                    | (Math.min(255, (((premultiplied >> 8) & 0xFF) * 255 + half) / a) << 8)
+                    | Math.min(255, ((premultiplied & 0xFF) * 255 + half) / a);
+        }
+    }
+}
@@ -0,0 +1,705 @@
+package com.watermark.utils;
+
+import com.watermark.model.WatermarkTemplate;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 分条流式渲染：用于超大尺寸的源图（如扫描的TIFF/PNG）。
+ * 按水平条带逐条解码，只在与水印外接矩形相交的条带上混合水印图章（平铺水印混合与条带相交的格子），
+ * 其余条带直接透传，写出时编码器按条带拉取像素，内存中只保留少数几条。
+ * JPEG和非隔行的PNG按行顺序解码，只从头到尾解码一遍：解码在单独的线程中写入一个按条带轮换的目标栅格，
+ * 两个条带缓冲区交替使用。这两种格式的读取器无法定位到指定的行，按区域读取时每个条带都要从文件开头重新解码；
+ * 分块或分条存储的TIFF等格式仍按区域读取，读取器会直接定位。
+ * JPEG输出同样由编码器逐行从按条带加载的栅格中取像素，不把整幅图像复制成一块栅格。
+ */
+public class StripStreamRenderer {
+    // 超过该像素数（约6400万）的源图走分条路径
+    private static final long STREAMING_THRESHOLD_PIXELS = 64L * 1024 * 1024;
+    // 每个条带的目标字节数
+    private static final int TARGET_STRIP_BYTES = 16 * 1024 * 1024;
+    private static final String PNG_METADATA_FORMAT = "javax_imageio_png_1.0";
+
+    private StripStreamRenderer() {
+    }
+
+    /**
+     * 读取图片尺寸（不解码像素），判断是否需要走分条路径
+     */
+    public static boolean shouldStream(File source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            ImageReader reader = input != null ? firstReader(input) : null;
+            if (reader == null) {
+                return false;
+            }
+            try {
+                reader.setInput(input, true, true);
+                return (long) reader.getWidth(0) * reader.getHeight(0) > STREAMING_THRESHOLD_PIXELS;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 逐条解码源图、合成水印并写出，template为null时只做格式转换
+     */
+    public static void export(File source, WatermarkTemplate template, BufferedImage watermarkImage,
+                              File outputFile, String outputFormat) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            ImageReader reader = input != null ? firstReader(input) : null;
+            if (reader == null) {
+                throw new IOException("无法识别的图片格式");
+            }
+            try {
+                // 按区域读取时需要反复定位，不能设置为只向前查找
+                reader.setInput(input, false, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                ImageTypeSpecifier sourceType = reader.getImageTypes(0).next();
+
+                // JPEG不支持透明度，PNG只在源图带透明通道时保留
+                boolean jpeg = "JPEG".equalsIgnoreCase(outputFormat);
+                boolean alpha = !jpeg && sourceType.getColorModel().hasAlpha();
+                int imageType = alpha ? BufferedImage.TYPE_INT_ARGB
+                        : jpeg ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_INT_RGB;
+
+                // 水印图章在整批中共用，只混合到与其外接矩形相交的条带上
+                WatermarkStamp stamp = null;
+                Rectangle bounds = null;
+                if (template != null) {
+                    stamp = WatermarkStamp.of(template, watermarkImage);
+                    bounds = stamp.boundsIn(width, height, template);
+                }
+
+                int stripHeight = Math.max(16, Math.min(height, TARGET_STRIP_BYTES / Math.max(1, width * 4)));
+                StripSource strips = null;
+                if (decodesInRowOrder(reader)) {
+                    strips = SequentialStrips.start(reader, sourceType, width, height, stripHeight);
+                }
+                if (strips == null) {
+                    strips = new RegionStrips(reader, width);
+                }
+                try {
+                    StripImage image = new StripImage(strips, width, height, stripHeight, imageType, template, stamp, bounds);
+                    if (jpeg) {
+                        writeJpeg(image, outputFile);
+                    } else if (!ImageIO.write(image, "png", outputFile)) {
+                        throw new IOException("没有可用的编码器: " + outputFormat);
+                    }
+                } finally {
+                    strips.close();
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static ImageReader firstReader(ImageInputStream input) {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        return readers.hasNext() ? readers.next() : null;
+    }
+
+    // JPEG和非隔行的PNG按行从上到下写入像素；隔行的PNG分多遍写入，其他格式可能按图块写入
+    private static boolean decodesInRowOrder(ImageReader reader) throws IOException {
+        String format = reader.getFormatName().toLowerCase(Locale.ROOT);
+        if ("jpeg".equals(format)) {
+            return true;
+        }
+        if (!"png".equals(format)) {
+            return false;
+        }
+        IIOMetadata metadata = reader.getImageMetadata(0);
+        if (metadata == null) {
+            return false;
+        }
+        for (Node node = metadata.getAsTree(PNG_METADATA_FORMAT).getFirstChild(); node != null; node = node.getNextSibling()) {
+            if ("IHDR".equals(node.getNodeName())) {
+                NamedNodeMap attributes = node.getAttributes();
+                Node interlace = attributes.getNamedItem("interlaceMethod");
+                return interlace != null && "none".equals(interlace.getNodeValue());
+            }
+        }
+        return false;
+    }
+
+    // JPEG编码器逐行从源栅格取像素，输出的栅格按需加载条带，不把整幅图像复制成一块栅格
+    private static void writeJpeg(StripImage image, File outputFile) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long size = (long) width * height * 3;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("图片过大，无法编码为JPEG，请导出为PNG格式");
+        }
+        SampleModel layout = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, width, height, 3, width * 3,
+                new int[]{2, 1, 0});
+        WritableRaster raster = Raster.createWritableRaster(layout, new StripPullBuffer(image, (int) size, width * 3), null);
+        BufferedImage view = new BufferedImage(image.getColorModel(), raster, false, null);
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            // 和ImageIO.write一样先删除旧文件，文件输出流不会截断原有内容
+            Files.deleteIfExists(outputFile.toPath());
+            try (ImageOutputStream output = ImageIO.createImageOutputStream(outputFile)) {
+                writer.setOutput(output);
+                writer.write(view);
+            }
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * 条带的来源，按条带序号依次读取
+     */
+    private interface StripSource {
+        /**
+         * 读取从第y行开始、高度为h的条带，返回的图像只在下一次读取之前有效
+         */
+        BufferedImage read(int strip, int y, int h) throws IOException;
+
+        void close();
+    }
+
+    /**
+     * 通过setSourceRegion按区域读取，用于读取器能直接定位到行或图块的格式
+     */
+    private static class RegionStrips implements StripSource {
+        private final ImageReader reader;
+        private final int width;
+
+        RegionStrips(ImageReader reader, int width) {
+            this.reader = reader;
+            this.width = width;
+        }
+
+        @Override
+        public BufferedImage read(int strip, int y, int h) throws IOException {
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(0, y, width, h));
+            return reader.read(0, param);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * 在后台线程中把整幅图像只解码一遍。读取器的目标图像覆盖整幅图像，但其数据缓冲区只映射当前条带：
+     * 解码器写到下一个条带时当前条带交给写出方，解码线程等待写出方归还缓冲区，两个缓冲区交替使用
+     */
+    private static class SequentialStrips implements StripSource {
+        private final int width;
+        private final int stripHeight;
+        private final ColorModel colorModel;
+        private final SampleModel stripLayout;
+        private final BlockingQueue<DataBuffer> free = new ArrayBlockingQueue<>(2);
+        // 两个缓冲区加一个解码出错的标记
+        private final BlockingQueue<Strip> filled = new ArrayBlockingQueue<>(3);
+        private final ImageReader reader;
+        private Thread decoder;
+        private DataBuffer held;
+        private volatile boolean closed = false;
+
+        private SequentialStrips(ImageReader reader, int width, int stripHeight, ColorModel colorModel, SampleModel stripLayout) {
+            this.reader = reader;
+            this.width = width;
+            this.stripHeight = stripHeight;
+            this.colorModel = colorModel;
+            this.stripLayout = stripLayout;
+        }
+
+        /**
+         * 开始解码，源图的像素布局无法按行映射到条带缓冲区时返回null
+         */
+        static SequentialStrips start(ImageReader reader, ImageTypeSpecifier sourceType,
+                                      int width, int height, int stripHeight) {
+            ColorModel colorModel;
+            SampleModel layout;
+            try {
+                if (isEightBitSrgb(sourceType)) {
+                    // 8位RGB(A)解码为每像素一个int，元素数等于像素数，超大的图片也不会超出栅格的上限
+                    BufferedImage prototype = new BufferedImage(1, 1, sourceType.getColorModel().hasAlpha()
+                            ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+                    colorModel = prototype.getColorModel();
+                    layout = prototype.getSampleModel().createCompatibleSampleModel(width, height);
+                } else {
+                    colorModel = sourceType.getColorModel();
+                    layout = sourceType.getSampleModel(width, height);
+                }
+            } catch (IllegalArgumentException e) {
+                // 整幅图像的样本数超出栅格的上限
+                return null;
+            }
+            SampleModel stripLayout = layout.createCompatibleSampleModel(width, stripHeight);
+            int type = layout.getDataType();
+            int stride = scanlineStride(layout);
+            if (type != DataBuffer.TYPE_BYTE && type != DataBuffer.TYPE_USHORT && type != DataBuffer.TYPE_INT
+                    || stride <= 0 || stride != scanlineStride(stripLayout)) {
+                return null;
+            }
+
+            SequentialStrips strips = new SequentialStrips(reader, width, stripHeight, colorModel, stripLayout);
+            RowBuffer buffer = strips.new RowBuffer(type, stride, (height + stripHeight - 1) / stripHeight,
+                    stripLayout.createDataBuffer());
+            strips.free.add(stripLayout.createDataBuffer());
+            BufferedImage destination = new BufferedImage(colorModel, Raster.createWritableRaster(layout, buffer, null),
+                    colorModel.isAlphaPremultiplied(), null);
+            strips.decoder = new Thread(() -> strips.decode(destination, buffer), "strip-decoder");
+            strips.decoder.setDaemon(true);
+            strips.decoder.start();
+            return strips;
+        }
+
+        // 每个分量都是8位的sRGB或sRGB加透明度，不含调色板
+        private static boolean isEightBitSrgb(ImageTypeSpecifier type) {
+            ColorModel model = type.getColorModel();
+            if (model instanceof IndexColorModel || model.isAlphaPremultiplied() || !model.getColorSpace().isCS_sRGB()) {
+                return false;
+            }
+            int components = model.getNumComponents();
+            if (components != (model.hasAlpha() ? 4 : 3)) {
+                return false;
+            }
+            for (int size : model.getComponentSize()) {
+                if (size != 8) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // 单一存储体、按行连续存放的布局才能按条带切分
+        private static int scanlineStride(SampleModel layout) {
+            if (layout instanceof PixelInterleavedSampleModel) {
+                return ((PixelInterleavedSampleModel) layout).getScanlineStride();
+            }
+            if (layout instanceof SinglePixelPackedSampleModel) {
+                return ((SinglePixelPackedSampleModel) layout).getScanlineStride();
+            }
+            if (layout instanceof MultiPixelPackedSampleModel) {
+                return ((MultiPixelPackedSampleModel) layout).getScanlineStride();
+            }
+            return -1;
+        }
+
+        private void decode(BufferedImage destination, RowBuffer buffer) {
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setDestination(destination);
+                reader.read(0, param);
+                buffer.finish();
+            } catch (Throwable e) {
+                if (!closed) {
+                    filled.add(new Strip(-1, null, e));
+                }
+            }
+        }
+
+        @Override
+        public BufferedImage read(int strip, int y, int h) throws IOException {
+            if (held != null) {
+                free.add(held);
+                held = null;
+            }
+            Strip next;
+            try {
+                next = filled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("导出被取消");
+            }
+            if (next.error != null) {
+                if (next.error instanceof IOException) {
+                    throw (IOException) next.error;
+                }
+                throw new IOException("解码失败: " + next.error, next.error);
+            }
+            if (next.index != strip) {
+                throw new IllegalStateException("条带没有按顺序读取：需要第 " + strip + " 条，解码得到第 " + next.index + " 条");
+            }
+            held = next.data;
+            SampleModel layout = h == stripHeight ? stripLayout : stripLayout.createCompatibleSampleModel(width, h);
+            return new BufferedImage(colorModel, Raster.createWritableRaster(layout, held, null),
+                    colorModel.isAlphaPremultiplied(), null);
+        }
+
+        // 提前结束时中止解码线程，等它退出后才能释放读取器
+        @Override
+        public void close() {
+            closed = true;
+            reader.abort();
+            decoder.interrupt();
+            boolean interrupted = false;
+            while (decoder.isAlive()) {
+                try {
+                    decoder.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private static class Strip {
+            private final int index;
+            private final DataBuffer data;
+            private final Throwable error;
+
+            Strip(int index, DataBuffer data, Throwable error) {
+                this.index = index;
+                this.data = data;
+                this.error = error;
+            }
+        }
+
+        /**
+         * 读取器目标栅格的数据缓冲区，元素序号按行映射到当前条带的缓冲区，只能按行顺序访问。
+         * 读取器逐个样本访问，直接读写条带缓冲区的数组，不经过其DataBuffer的方法
+         */
+        private class RowBuffer extends DataBuffer {
+            private final int stride;
+            private final int stripCount;
+            private final int stripElements;
+            private DataBuffer current;
+            private byte[] bytes;
+            private short[] shorts;
+            private int[] ints;
+            private int writing = 0;
+            private int base = 0;
+
+            RowBuffer(int dataType, int stride, int stripCount, DataBuffer first) {
+                super(dataType, (int) Math.min(Integer.MAX_VALUE, (long) stride * stripHeight * stripCount));
+                this.stride = stride;
+                this.stripCount = stripCount;
+                this.stripElements = stride * stripHeight;
+                use(first);
+            }
+
+            @Override
+            public int getElem(int i) {
+                return getElem(0, i);
+            }
+
+            @Override
+            public int getElem(int bank, int i) {
+                int offset = i - base;
+                if (offset < 0 || offset >= stripElements) {
+                    offset = moveTo(i);
+                }
+                if (ints != null) {
+                    return ints[offset];
+                }
+                return bytes != null ? bytes[offset] & 0xff : shorts[offset] & 0xffff;
+            }
+
+            @Override
+            public void setElem(int i, int val) {
+                setElem(0, i, val);
+            }
+
+            @Override
+            public void setElem(int bank, int i, int val) {
+                int offset = i - base;
+                if (offset < 0 || offset >= stripElements) {
+                    offset = moveTo(i);
+                }
+                if (ints != null) {
+                    ints[offset] = val;
+                } else if (bytes != null) {
+                    bytes[offset] = (byte) val;
+                } else {
+                    shorts[offset] = (short) val;
+                }
+            }
+
+            private void use(DataBuffer buffer) {
+                current = buffer;
+                bytes = buffer instanceof DataBufferByte ? ((DataBufferByte) buffer).getData() : null;
+                shorts = buffer instanceof DataBufferUShort ? ((DataBufferUShort) buffer).getData() : null;
+                ints = buffer instanceof DataBufferInt ? ((DataBufferInt) buffer).getData() : null;
+            }
+
+            // 访问到后面的条带时，之前的条带都已写完，依次交给写出方
+            private int moveTo(int i) {
+                int strip = i / stride / stripHeight;
+                if (strip < writing || strip >= stripCount) {
+                    throw new IllegalStateException("解码器没有按行顺序写入像素（第 " + (i / stride) + " 行）");
+                }
+                while (writing < strip) {
+                    publish();
+                }
+                return i - base;
+            }
+
+            // 解码结束，交出剩余的条带
+            void finish() {
+                while (writing < stripCount) {
+                    publish();
+                }
+            }
+
+            private void publish() {
+                filled.add(new Strip(writing, current, null));
+                writing++;
+                base = writing * stripElements;
+                if (writing < stripCount) {
+                    try {
+                        use(free.take());
+                    } catch (InterruptedException e) {
+                        throw new CancellationException("导出被取消");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 只读的JPEG编码源数据，元素序号按行映射到分条图像中对应条带的像素，编码器逐行访问时每个条带只加载一次
+     */
+    private static class StripPullBuffer extends DataBuffer {
+        private final StripImage image;
+        private final int stride;
+        private byte[] data;
+        private int base = 0;
+        private int length = 0;
+
+        StripPullBuffer(StripImage image, int size, int stride) {
+            super(TYPE_BYTE, size);
+            this.image = image;
+            this.stride = stride;
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            int offset = i - base;
+            if (offset < 0 || offset >= length) {
+                Raster strip = image.getTile(0, i / stride / image.getTileHeight());
+                data = ((DataBufferByte) strip.getDataBuffer()).getData();
+                base = strip.getMinY() * stride;
+                length = strip.getHeight() * stride;
+                offset = i - base;
+            }
+            return data[offset] & 0xff;
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            throw new UnsupportedOperationException("只读");
+        }
+    }
+
+    /**
+     * 以水平条带为图块的RenderedImage，按需解码并合成，只缓存最近使用的一个条带
+     */
+    private static class StripImage implements RenderedImage {
+        private final StripSource strips;
+        private final int width;
+        private final int height;
+        private final int stripHeight;
+        private final int imageType;
+        private final WatermarkTemplate template;
+        private final WatermarkStamp stamp;
+        private final Rectangle stampBounds;
+        private final ColorModel colorModel;
+        private final SampleModel sampleModel;
+
+        private int cachedStrip = -1;
+        private Raster cachedRaster;
+
+        StripImage(StripSource strips, int width, int height, int stripHeight, int imageType,
+                   WatermarkTemplate template, WatermarkStamp stamp, Rectangle stampBounds) {
+            this.strips = strips;
+            this.width = width;
+            this.height = height;
+            this.stripHeight = stripHeight;
+            this.imageType = imageType;
+            this.template = template;
+            this.stamp = stamp;
+            this.stampBounds = stampBounds;
+
+            BufferedImage prototype = new BufferedImage(1, 1, imageType);
+            this.colorModel = prototype.getColorModel();
+            this.sampleModel = prototype.getSampleModel().createCompatibleSampleModel(width, stripHeight);
+        }
+
+        @Override
+        public synchronized Raster getTile(int tileX, int tileY) {
+            if (tileY != cachedStrip) {
+                cachedRaster = loadStrip(tileY);
+                cachedStrip = tileY;
+            }
+            return cachedRaster;
+        }
+
+        // 解码一个条带并转换为输出格式，与水印相交时把水印图章混合上去
+        private Raster loadStrip(int strip) {
+            int y = strip * stripHeight;
+            int h = Math.min(stripHeight, height - y);
+            try {
+                BufferedImage decoded = strips.read(strip, y, h);
+
+                BufferedImage converted = new BufferedImage(width, h, imageType);
+                Graphics2D g2d = converted.createGraphics();
+                g2d.drawImage(decoded, 0, 0, null);
+                g2d.dispose();
+                if (stamp != null && stampBounds.y < y + h && stampBounds.y + stampBounds.height > y) {
+                    stamp.blendRegion(converted, width, height, template, 0, y);
+                }
+                return converted.getRaster().createTranslatedChild(0, y);
+            } catch (IOException e) {
+                // RenderedImage接口不允许抛出受检异常，由ImageIO.write包装后抛出
+                throw new IllegalStateException("读取图片条带失败（第 " + y + " 行）: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public Raster getData(Rectangle rect) {
+            WritableRaster raster = Raster.createWritableRaster(
+                    sampleModel.createCompatibleSampleModel(rect.width, rect.height), new Point(rect.x, rect.y));
+            return copyData(raster);
+        }
+
+        @Override
+        public Raster getData() {
+            return getData(new Rectangle(0, 0, width, height));
+        }
+
+        @Override
+        public WritableRaster copyData(WritableRaster raster) {
+            if (raster == null) {
+                raster = Raster.createWritableRaster(
+                        sampleModel.createCompatibleSampleModel(width, height), new Point(0, 0));
+            }
+            int firstStrip = Math.max(0, raster.getMinY() / stripHeight);
+            int lastStrip = Math.min(getNumYTiles() - 1, (raster.getMinY() + raster.getHeight() - 1) / stripHeight);
+            for (int strip = firstStrip; strip <= lastStrip; strip++) {
+                raster.setRect(getTile(0, strip));
+            }
+            return raster;
+        }
+
+        @Override
+        public Vector<RenderedImage> getSources() {
+            return null;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return Image.UndefinedProperty;
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+            return null;
+        }
+
+        @Override
+        public ColorModel getColorModel() {
+            return colorModel;
+        }
+
+        @Override
+        public SampleModel getSampleModel() {
+            return sampleModel;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public int getMinX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinY() {
+            return 0;
+        }
+
+        @Override
+        public int getNumXTiles() {
+            return 1;
+        }
+
+        @Override
+        public int getNumYTiles() {
+            return (height + stripHeight - 1) / stripHeight;
+        }
+
+        @Override
+        public int getMinTileX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinTileY() {
+            return 0;
+        }
+
+        @Override
+        public int getTileWidth() {
+            return width;
+        }
+
+        @Override
+        public int getTileHeight() {
+            return stripHeight;
+        }
+
+        @Override
+        public int getTileGridXOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getTileGridYOffset() {
+            return 0;
+        }
+    }
+}
@@ -75,6 +75,26 @@ public class TemplateManager {
         return templates;
     }
 
+    /**
+     * 按名称或文件路径加载单个模板，找不到时返回null
+     */
+    public WatermarkTemplate loadTemplate(String nameOrPath) {
+        File file = new File(nameOrPath);
+        if (!file.isFile()) {
+            file = new File(TEMPLATE_DIR + File.separator + nameOrPath + ".dat");
+        }
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+            return (WatermarkTemplate) ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     /**
      * 删除模板
      */
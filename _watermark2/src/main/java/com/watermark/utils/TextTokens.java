@@ -0,0 +1,150 @@
+package com.watermark.utils;
+
+import com.watermark.model.WatermarkTemplate;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 文本水印中的变量，按每张图片分别替换：
+ * {date} 拍摄日期（yyyy.MM.dd，与旧版Python工具一致），{camera} 相机型号，
+ * {filename} 不含扩展名的文件名，{index} 导出序号（从1开始）。
+ * 拍摄日期和相机来自调用方已读取的EXIF（JPEG开头的几个标记段），没有EXIF时拍摄日期使用文件修改日期。
+ * 这里不读取文件；文字中不含变量时直接返回原配方，不复制。
+ */
+public class TextTokens {
+    public static final String DATE = "{date}";
+    public static final String CAMERA = "{camera}";
+    public static final String FILENAME = "{filename}";
+    public static final String INDEX = "{index}";
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM.dd");
+
+    private TextTokens() {
+    }
+
+    /**
+     * 文本水印配方是否包含任何变量
+     */
+    public static boolean hasTokens(WatermarkTemplate recipe) {
+        String text = textOf(recipe);
+        return text != null && (text.contains(DATE) || text.contains(CAMERA)
+                || text.contains(FILENAME) || text.contains(INDEX));
+    }
+
+    /**
+     * 配方是否包含随文件名或序号变化的变量。包含时内容相同的重复文件也不能共用同一份渲染结果
+     */
+    public static boolean dependsOnFile(WatermarkTemplate recipe) {
+        String text = textOf(recipe);
+        return text != null && (text.contains(FILENAME) || text.contains(INDEX));
+    }
+
+    /**
+     * 文字中是否含有需要EXIF的变量（拍摄日期或相机）
+     */
+    public static boolean needsExif(String text) {
+        return text != null && (text.contains(DATE) || text.contains(CAMERA));
+    }
+
+    public static boolean needsExif(WatermarkTemplate recipe) {
+        return needsExif(textOf(recipe));
+    }
+
+    /**
+     * 配方是否含有拍摄日期变量。没有EXIF拍摄时间时日期取文件修改时间，内容不变而修改时间变化时结果也会变化
+     */
+    public static boolean dependsOnModifiedTime(WatermarkTemplate recipe) {
+        String text = textOf(recipe);
+        return text != null && text.contains(DATE);
+    }
+
+    /**
+     * 返回替换了变量的配方副本，不含变量时返回原配方。index为导出序号，小于1时保留{index}不替换；
+     * exif为调用方已读取的元数据，不是JPEG或没有EXIF时为null
+     */
+    public static WatermarkTemplate resolve(WatermarkTemplate recipe, File file, int index, ExifReader.ExifData exif) {
+        if (!hasTokens(recipe)) {
+            return recipe;
+        }
+        WatermarkTemplate resolved = recipe.copy();
+        resolved.setTextWatermark(resolve(recipe.getTextWatermark(), file, index, exif));
+        resolved.setPerImage(true);
+        return resolved;
+    }
+
+    /**
+     * 只替换{filename}和{index}，保留{date}和{camera}。后两者只取决于源文件内容，
+     * 导出清单已经比较了源文件，所以判断输出是否最新时用这个结果计算配方哈希，不必读取EXIF
+     */
+    public static WatermarkTemplate resolveFileTokens(WatermarkTemplate recipe, File file, int index) {
+        if (!dependsOnFile(recipe)) {
+            return recipe;
+        }
+        WatermarkTemplate resolved = recipe.copy();
+        resolved.setTextWatermark(resolveFileTokens(recipe.getTextWatermark(), file, index));
+        return resolved;
+    }
+
+    /**
+     * 替换文字中的变量，exif为调用方已读取的元数据，可以为null
+     */
+    public static String resolve(String text, File file, int index, ExifReader.ExifData exif) {
+        if (text == null || text.indexOf('{') < 0) {
+            return text;
+        }
+        if (text.contains(DATE)) {
+            text = text.replace(DATE, formatDate(captureTime(file, exif)));
+        }
+        if (text.contains(CAMERA)) {
+            text = text.replace(CAMERA, exif != null ? cameraName(exif) : "");
+        }
+        return resolveFileTokens(text, file, index);
+    }
+
+    private static String resolveFileTokens(String text, File file, int index) {
+        if (text.contains(FILENAME)) {
+            String name = file.getName();
+            int dot = name.lastIndexOf('.');
+            text = text.replace(FILENAME, dot > 0 ? name.substring(0, dot) : name);
+        }
+        if (index >= 1) {
+            text = text.replace(INDEX, String.valueOf(index));
+        }
+        return text;
+    }
+
+    /**
+     * 拍摄时间（毫秒），EXIF中没有拍摄时间时为文件修改时间
+     */
+    public static long captureTime(File file, ExifReader.ExifData exif) {
+        if (exif != null && exif.getCaptureTime() >= 0) {
+            return exif.getCaptureTime();
+        }
+        return file.lastModified();
+    }
+
+    public static String formatDate(long time) {
+        return DATE_FORMAT.format(Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()));
+    }
+
+    // 型号通常已包含厂商名（如"Canon EOS R5"），这时不再重复
+    private static String cameraName(ExifReader.ExifData exif) {
+        String make = exif.getMake();
+        String model = exif.getModel();
+        if (model == null) {
+            return make != null ? make : "";
+        }
+        if (make == null || model.toLowerCase().startsWith(make.toLowerCase())) {
+            return model;
+        }
+        return make + " " + model;
+    }
+
+    private static String textOf(WatermarkTemplate recipe) {
+        return recipe != null && recipe.getType() == WatermarkTemplate.TemplateType.TEXT
+                ? recipe.getTextWatermark() : null;
+    }
+}
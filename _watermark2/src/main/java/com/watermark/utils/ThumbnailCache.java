@@ -0,0 +1,120 @@
+package com.watermark.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 缩略图内存缓存：以文件路径和修改时间为键，按像素占用字节数做LRU淘汰。
+ * 列表绘制时只从缓存中取已缩放好的缩略图，不再做任何缩放。
+ */
+public class ThumbnailCache {
+    // 默认预算：128MB 与最大堆的1/8 取较小值
+    private static final long DEFAULT_BUDGET_BYTES = Math.min(128L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+
+    private static ThumbnailCache instance;
+
+    private final long budgetBytes;
+    private final LinkedHashMap<Key, BufferedImage> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long usedBytes = 0;
+
+    public ThumbnailCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public static synchronized ThumbnailCache getInstance() {
+        if (instance == null) {
+            instance = new ThumbnailCache(DEFAULT_BUDGET_BYTES);
+        }
+        return instance;
+    }
+
+    public synchronized BufferedImage get(Key key) {
+        return entries.get(key);
+    }
+
+    /**
+     * 是否已缓存，不改变最近使用顺序
+     */
+    public synchronized boolean contains(Key key) {
+        return entries.containsKey(key);
+    }
+
+    public synchronized void put(Key key, BufferedImage thumbnail) {
+        BufferedImage previous = entries.put(key, thumbnail);
+        if (previous != null) {
+            usedBytes -= sizeOf(previous);
+        }
+        usedBytes += sizeOf(thumbnail);
+
+        // 淘汰最久未使用的缩略图，直到回到预算以内（至少保留刚放入的一张）
+        Iterator<Map.Entry<Key, BufferedImage>> iterator = entries.entrySet().iterator();
+        while (usedBytes > budgetBytes && entries.size() > 1 && iterator.hasNext()) {
+            Map.Entry<Key, BufferedImage> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            usedBytes -= sizeOf(eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    // 按数据缓冲区实际占用的字节数估算
+    private static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * 缓存键：文件路径 + 修改时间 + 版本号（水印处理后版本号递增）
+     */
+    public static final class Key {
+        private final String path;
+        private final long lastModified;
+        private final int revision;
+
+        public Key(String path, long lastModified, int revision) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.revision = revision;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return lastModified == other.lastModified && revision == other.revision && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, lastModified, revision);
+        }
+
+        @Override
+        public String toString() {
+            return path + "@" + lastModified + "#" + revision;
+        }
+    }
+}
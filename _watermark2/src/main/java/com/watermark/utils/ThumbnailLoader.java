@@ -0,0 +1,412 @@
+package com.watermark.utils;
+
+import com.watermark.model.ImageItem;
+import com.watermark.model.WatermarkTemplate;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缩略图加载器：在后台线程中使用ImageReader的源采样解码小尺寸缩略图，
+ * 并按条目的水印配方在缩略图上绘制水印，结果放入ThumbnailCache，避免按原始分辨率解码和渲染。
+ * 排队的请求按优先级执行：可见的缩略图最先，其次是预取的下一屏；同一优先级中后提交的先执行，
+ * 快速滚动或跳到列表末尾时，当前视口中的缩略图不必等待之前经过的条目。
+ */
+public class ThumbnailLoader {
+    // 与ImageListCellRenderer中的缩略图单元格尺寸一致
+    public static final int THUMBNAIL_SIZE = 100;
+
+    // 请求优先级，数值小的先执行
+    private static final int PRIORITY_VISIBLE = 0;
+    private static final int PRIORITY_PREFETCH = 1;
+
+    private static ThumbnailLoader instance;
+    private final ThreadPoolExecutor executor;
+    private final ThumbnailCache cache = ThumbnailCache.getInstance();
+    private final AtomicLong sequence = new AtomicLong();
+    // 排队中尚未开始的请求和正在生成的缩略图，由this加锁保护
+    private final Map<ThumbnailCache.Key, LoadTask> queued = new HashMap<>();
+    private final Set<ThumbnailCache.Key> running = new HashSet<>();
+    // 解码失败的缩略图不再重试，避免每次重绘都重新提交
+    private final Set<ThumbnailCache.Key> failed = ConcurrentHashMap.newKeySet();
+
+    private ThumbnailLoader() {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "thumbnail-loader-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    public static synchronized ThumbnailLoader getInstance() {
+        if (instance == null) {
+            instance = new ThumbnailLoader();
+        }
+        return instance;
+    }
+
+    /**
+     * 请求缩略图：已在缓存中时直接返回，否则以可见优先级在后台生成并放入缓存，
+     * 完成后在事件线程中执行回调。同一缩略图的重复请求会被合并。
+     */
+    public BufferedImage request(ImageItem item, Runnable onLoaded) {
+        ThumbnailCache.Key key = item.getThumbnailKey();
+        BufferedImage cached = cache.get(key);
+        if (cached == null) {
+            synchronized (this) {
+                submit(item, key, PRIORITY_VISIBLE, onLoaded);
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * 更新视口：visible为当前可见的条目，ahead为滚动方向上要预取的条目，均按显示顺序排列。
+     * 不在这两组中的排队请求被取消（已滚动离开），可见条目排在预取条目之前，各组中靠前的条目先生成
+     */
+    public synchronized void updateViewport(List<ImageItem> visible, List<ImageItem> ahead, Runnable onLoaded) {
+        Set<ThumbnailCache.Key> wanted = new HashSet<>();
+        for (ImageItem item : visible) {
+            wanted.add(item.getThumbnailKey());
+        }
+        for (ImageItem item : ahead) {
+            wanted.add(item.getThumbnailKey());
+        }
+        Iterator<Map.Entry<ThumbnailCache.Key, LoadTask>> iterator = queued.entrySet().iterator();
+        while (iterator.hasNext()) {
+            LoadTask task = iterator.next().getValue();
+            if (!wanted.contains(task.key)) {
+                task.cancelled = true;
+                iterator.remove();
+            }
+        }
+        executor.getQueue().removeIf(task -> ((LoadTask) task).cancelled);
+
+        // 同一优先级中后提交的先执行，所以倒序提交
+        for (int i = ahead.size() - 1; i >= 0; i--) {
+            ImageItem item = ahead.get(i);
+            submitIfMissing(item, PRIORITY_PREFETCH, onLoaded);
+        }
+        for (int i = visible.size() - 1; i >= 0; i--) {
+            submitIfMissing(visible.get(i), PRIORITY_VISIBLE, onLoaded);
+        }
+    }
+
+    private void submitIfMissing(ImageItem item, int priority, Runnable onLoaded) {
+        ThumbnailCache.Key key = item.getThumbnailKey();
+        if (!cache.contains(key)) {
+            submit(item, key, priority, onLoaded);
+        }
+    }
+
+    // 调用方持有this锁。已在排队时只在优先级提高时重新排队，正在生成或已失败的不再提交
+    private void submit(ImageItem item, ThumbnailCache.Key key, int priority, Runnable onLoaded) {
+        if (failed.contains(key) || running.contains(key)) {
+            return;
+        }
+        LoadTask existing = queued.get(key);
+        if (existing != null) {
+            if (existing.priority <= priority) {
+                return;
+            }
+            existing.cancelled = true;
+            executor.remove(existing);
+        }
+        LoadTask task = new LoadTask(item, key, priority, sequence.incrementAndGet(), onLoaded);
+        queued.put(key, task);
+        executor.execute(task);
+    }
+
+    private void load(LoadTask task) {
+        synchronized (this) {
+            if (task.cancelled) {
+                return;
+            }
+            queued.remove(task.key);
+            running.add(task.key);
+        }
+        try {
+            BufferedImage thumbnail = generateThumbnail(task.item);
+            if (thumbnail != null) {
+                cache.put(task.key, thumbnail);
+            } else {
+                failed.add(task.key);
+            }
+        } catch (IOException | RuntimeException e) {
+            failed.add(task.key);
+            System.err.println("生成缩略图失败：" + task.item.getFile() + " - " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                running.remove(task.key);
+            }
+        }
+        if (task.onLoaded != null) {
+            SwingUtilities.invokeLater(task.onLoaded);
+        }
+    }
+
+    /**
+     * 该条目的缩略图是否已确定无法生成
+     */
+    public boolean hasFailed(ImageItem item) {
+        return failed.contains(item.getThumbnailKey());
+    }
+
+    // 源缩略图优先从图片库目录读取，其次使用JPEG中嵌入的缩略图，最后从文件采样解码；
+    // 有水印配方时按缩略图比例绘制水印，不渲染原始分辨率。水印按存储方向绘制，与导出结果一致，最后按EXIF方向转正显示
+    private static BufferedImage generateThumbnail(ImageItem item) throws IOException {
+        SourceThumbnail source = loadSourceThumbnail(item.getFile());
+        if (source == null) {
+            return null;
+        }
+
+        BufferedImage thumbnail = source.image;
+        if (item.getRecipe() != null) {
+            // 列表中的条目没有导出序号，缩略图中保留{index}，其余变量按图片替换
+            WatermarkTemplate recipe = TextTokens.resolve(item.getRecipe(), item.getFile(), 0, source.exif);
+            Graphics2D g2d = thumbnail.createGraphics();
+            g2d.scale((double) thumbnail.getWidth() / source.width, (double) thumbnail.getHeight() / source.height);
+            WatermarkRenderer.paintTemplate(g2d, source.width, source.height, recipe, item.getWatermarkImage());
+            g2d.dispose();
+        }
+        return ExifReader.applyOrientation(thumbnail, source.orientation);
+    }
+
+    private static SourceThumbnail loadSourceThumbnail(File file) throws IOException {
+        // 先记下文件状态再读取，读取期间文件被修改时下次会因不匹配而重新生成
+        long lastModified = file.lastModified();
+        long fileSize = file.length();
+
+        // 先按路径、大小和修改时间查图片库目录，命中时缩略图和EXIF信息都来自目录，不打开源文件
+        LibraryCatalog catalog = LibraryCatalog.getInstance();
+        LibraryCatalog.Entry entry = catalog.lookup(file);
+        if (entry != null && entry.hasExif() && entry.matches(lastModified, fileSize)) {
+            BufferedImage thumbnail = entry.decodeThumbnail();
+            if (thumbnail != null) {
+                return new SourceThumbnail(thumbnail, entry.getWidth(), entry.getHeight(), entry.toExif());
+            }
+        }
+
+        // JPEG的方向和嵌入缩略图只需读取文件开头的几个标记段
+        ExifReader.ExifData exif = ExifReader.read(file);
+
+        // 嵌入缩略图路径不读取整个文件，内容哈希留空，需要时由去重扫描计算
+        BufferedImage embedded = decodeEmbeddedThumbnail(exif);
+        if (embedded != null) {
+            catalog.put(LibraryCatalog.Entry.create(file, lastModified, fileSize, exif.getWidth(), exif.getHeight(),
+                    new byte[0], exif, embedded));
+            return new SourceThumbnail(embedded, exif.getWidth(), exif.getHeight(), exif);
+        }
+
+        // 解码时读入的数据同时计算内容哈希，不再为哈希重新读取文件
+        int[] size = new int[2];
+        MessageDigest digest = FileHasher.newDigest();
+        BufferedImage thumbnail = decodeThumbnail(file, THUMBNAIL_SIZE, size, digest);
+        if (thumbnail == null) {
+            return null;
+        }
+        catalog.put(LibraryCatalog.Entry.create(file, lastModified, fileSize, size[0], size[1],
+                digest.digest(), exif, thumbnail));
+        return new SourceThumbnail(thumbnail, size[0], size[1], exif);
+    }
+
+    /**
+     * 解码EXIF中嵌入的缩略图（通常约160x120），裁掉为适配4:3而加的黑边后缩放到缩略图尺寸。
+     * 没有嵌入缩略图、无法解码或尺寸太小时返回null
+     */
+    private static BufferedImage decodeEmbeddedThumbnail(ExifReader.ExifData exif) {
+        if (exif == null || exif.getThumbnail() == null || exif.getWidth() <= 0 || exif.getHeight() <= 0) {
+            return null;
+        }
+        BufferedImage image;
+        try {
+            image = ImageIO.read(new ByteArrayInputStream(exif.getThumbnail()));
+        } catch (IOException e) {
+            return null;
+        }
+        if (image == null || Math.max(image.getWidth(), image.getHeight()) < THUMBNAIL_SIZE) {
+            return null;
+        }
+
+        // 嵌入缩略图的宽高比与原图不同时，从中间裁出与原图相同的宽高比
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double sourceAspect = (double) exif.getWidth() / exif.getHeight();
+        double aspect = (double) width / height;
+        if (aspect > sourceAspect * 1.02) {
+            int cropWidth = Math.max(1, (int) Math.round(height * sourceAspect));
+            image = image.getSubimage((width - cropWidth) / 2, 0, cropWidth, height);
+        } else if (aspect < sourceAspect / 1.02) {
+            int cropHeight = Math.max(1, (int) Math.round(width / sourceAspect));
+            image = image.getSubimage(0, (height - cropHeight) / 2, width, cropHeight);
+        }
+        return createThumbnail(image, THUMBNAIL_SIZE);
+    }
+
+    /**
+     * 使用源采样解码不超过 maxSize x maxSize 的缩略图，保持宽高比
+     */
+    public static BufferedImage decodeThumbnail(File file, int maxSize) throws IOException {
+        return decodeThumbnail(file, maxSize, null, null);
+    }
+
+    // sourceSize不为null时写入原图的宽和高；digest不为null时文件的全部内容按顺序经过digest，
+    // 解码器没有读到的结尾部分在解码后继续读完
+    private static BufferedImage decodeThumbnail(File file, int maxSize, int[] sourceSize, MessageDigest digest)
+            throws IOException {
+        if (digest == null) {
+            try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+                return decodeThumbnail(input, maxSize, sourceSize);
+            }
+        }
+        try (InputStream in = new DigestInputStream(new FileInputStream(file), digest);
+             ImageInputStream input = new MemoryCacheImageInputStream(in)) {
+            BufferedImage thumbnail = decodeThumbnail(input, maxSize, sourceSize);
+            if (thumbnail != null) {
+                byte[] buffer = new byte[64 * 1024];
+                while (in.read(buffer) != -1) {
+                    // 读到的数据已经过digest
+                }
+            }
+            return thumbnail;
+        }
+    }
+
+    private static BufferedImage decodeThumbnail(ImageInputStream input, int maxSize, int[] sourceSize)
+            throws IOException {
+        if (input == null) {
+            return null;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            return null;
+        }
+
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            if (sourceSize != null) {
+                sourceSize[0] = width;
+                sourceSize[1] = height;
+            }
+
+            // 采样后保留约两倍目标尺寸，再平滑缩放，兼顾速度与缩略图质量
+            int subsampling = Math.max(1, Math.max(width, height) / (maxSize * 2));
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+            return createThumbnail(reader.read(0, param), maxSize);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * 把已解码的图片缩放为不超过 maxSize x maxSize 的缩略图，保持宽高比
+     */
+    public static BufferedImage createThumbnail(BufferedImage image, int maxSize) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = Math.min(1.0, Math.min((double) maxSize / width, (double) maxSize / height));
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+        // 逐级减半缩放，避免一次大比例双线性缩放产生锯齿
+        BufferedImage current = image;
+        int currentWidth = width;
+        int currentHeight = height;
+        do {
+            currentWidth = Math.max(targetWidth, currentWidth / 2);
+            currentHeight = Math.max(targetHeight, currentHeight / 2);
+
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight,
+                    image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = next.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            g2d.dispose();
+            current = next;
+        } while (currentWidth != targetWidth || currentHeight != targetHeight);
+
+        return current;
+    }
+
+    // 一个排队的缩略图请求，按优先级排序，同一优先级中序号大（后提交）的在前
+    private class LoadTask implements Runnable, Comparable<LoadTask> {
+        private final ImageItem item;
+        private final ThumbnailCache.Key key;
+        private final int priority;
+        private final long sequence;
+        private final Runnable onLoaded;
+        private volatile boolean cancelled;
+
+        LoadTask(ImageItem item, ThumbnailCache.Key key, int priority, long sequence, Runnable onLoaded) {
+            this.item = item;
+            this.key = key;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.onLoaded = onLoaded;
+        }
+
+        @Override
+        public void run() {
+            load(this);
+        }
+
+        @Override
+        public int compareTo(LoadTask other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(other.sequence, sequence);
+        }
+    }
+
+    // 源缩略图（存储方向）、原图尺寸、EXIF方向及元数据（不是JPEG时为null）
+    private static class SourceThumbnail {
+        private final BufferedImage image;
+        private final int width;
+        private final int height;
+        private final int orientation;
+        private final ExifReader.ExifData exif;
+
+        SourceThumbnail(BufferedImage image, int width, int height, ExifReader.ExifData exif) {
+            this.image = image;
+            this.width = width;
+            this.height = height;
+            this.orientation = exif != null ? exif.getOrientation() : 1;
+            this.exif = exif;
+        }
+    }
+}
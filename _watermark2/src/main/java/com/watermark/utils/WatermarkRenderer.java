@@ -0,0 +1,378 @@
+package com.watermark.utils;
+
+import com.watermark.model.WatermarkTemplate;
+import com.watermark.model.WatermarkTemplate.WatermarkPosition;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * 水印渲染器：图形界面与命令行批处理共用的文本/图片水印合成逻辑。
+ * 所有方法只使用局部状态，可在多个工作线程中并发调用。
+ */
+public class WatermarkRenderer {
+
+    private WatermarkRenderer() {
+    }
+
+    /**
+     * 按模板参数为图片添加水印，尽量直接在解码结果上合成而不复制：
+     * 图片已是混合内核支持的格式时原地混合并返回同一对象（会修改传入的图片），否则只转换一次。
+     * keepAlpha为false时（如JPEG输出）丢弃透明度，只有需要保留透明度时才使用带alpha的格式
+     */
+    public static BufferedImage renderInPlace(BufferedImage image, WatermarkTemplate template, BufferedImage watermarkImage,
+                                              boolean keepAlpha) {
+        BufferedImage target = toCompositeFormat(image, keepAlpha);
+        WatermarkStamp.of(template, watermarkImage).blendInto(target, template);
+        return target;
+    }
+
+    /**
+     * 返回可以直接混合水印的图片：带透明度时为INT_ARGB/INT_ARGB_PRE，不透明时为INT_RGB/3BYTE_BGR，
+     * 已是这些格式时返回原图，否则转换为INT_ARGB或3BYTE_BGR（JPEG解码结果的原生格式）
+     */
+    public static BufferedImage toCompositeFormat(BufferedImage image, boolean keepAlpha) {
+        boolean alpha = keepAlpha && image.getColorModel().hasAlpha();
+        int type = image.getType();
+        if (alpha ? type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_ARGB_PRE
+                : type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_3BYTE_BGR) {
+            return image;
+        }
+
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(),
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g2d = converted.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return converted;
+    }
+
+    /**
+     * 按模板参数在图片坐标系中绘制水印，width和height为原图尺寸
+     */
+    public static void paintTemplate(Graphics2D g2d, int width, int height, WatermarkTemplate template, BufferedImage watermarkImage) {
+        // 平铺水印用缓存的图案一次填充，不逐个绘制
+        if (template.isTiled()) {
+            WatermarkStamp.of(template, watermarkImage).paint(g2d, width, height, template);
+            return;
+        }
+
+        if (template.getType() == WatermarkTemplate.TemplateType.IMAGE) {
+            paintImageWatermark(
+                    g2d,
+                    width,
+                    height,
+                    watermarkImage,
+                    template.getImageScale(),
+                    template.getImageOpacity(),
+                    template.getRotation(),
+                    positionOf(template),
+                    template.getCustomPosition()
+            );
+            return;
+        }
+
+        paintTextWatermark(
+                g2d,
+                width,
+                height,
+                template.getTextWatermark(),
+                createFont(template.getFontName(), template.getFontSize(), template.isBold(), template.isItalic()),
+                applyOpacity(template.getTextColor(), template.getTextOpacity()),
+                template.isHasShadow(),
+                template.isHasOutline(),
+                template.getRotation(),
+                positionOf(template),
+                template.getCustomPosition()
+        );
+    }
+
+    /**
+     * 计算水印在原图坐标中旋转后的外接矩形（含阴影、描边和抗锯齿边缘），未裁剪到图片范围内
+     */
+    public static Rectangle watermarkBounds(int width, int height, WatermarkTemplate template, BufferedImage watermarkImage) {
+        return WatermarkStamp.of(template, watermarkImage).boundsIn(width, height, template);
+    }
+
+    /**
+     * 只渲染水印本身：返回与bounds同尺寸的透明图层，图层左上角对应原图坐标中的 (bounds.x, bounds.y)
+     */
+    public static BufferedImage renderOverlay(int width, int height, WatermarkTemplate template, BufferedImage watermarkImage, Rectangle bounds) {
+        BufferedImage overlay = new BufferedImage(Math.max(1, bounds.width), Math.max(1, bounds.height), BufferedImage.TYPE_INT_ARGB);
+        WatermarkStamp.of(template, watermarkImage).blendRegion(overlay, width, height, template, bounds.x, bounds.y);
+        return overlay;
+    }
+
+    // 模板未设置预设位置时默认使用右下角，与水印对话框保持一致
+    static WatermarkPosition positionOf(WatermarkTemplate template) {
+        return template.getPosition() != null ? template.getPosition() : WatermarkPosition.BOTTOM_RIGHT;
+    }
+
+    /**
+     * 根据字体名称、字号和样式创建字体
+     */
+    public static Font createFont(String fontName, int fontSize, boolean isBold, boolean isItalic) {
+        int fontStyle = Font.PLAIN;
+        if (isBold && isItalic) {
+            fontStyle = Font.BOLD | Font.ITALIC;
+        } else if (isBold) {
+            fontStyle = Font.BOLD;
+        } else if (isItalic) {
+            fontStyle = Font.ITALIC;
+        }
+
+        return new Font(fontName, fontStyle, fontSize);
+    }
+
+    /**
+     * 把透明度百分比 (0-100) 合成到颜色的alpha通道
+     */
+    public static Color applyOpacity(Color color, int opacity) {
+        if (color == null) {
+            color = Color.BLACK;
+        }
+        int alpha = (int) (255 * (opacity / 100.0));
+        return new Color(color.getRed(), color.getGreen(), color.getBlue(), alpha);
+    }
+
+    /**
+     * 在图片坐标系中绘制文本水印。g2d可以带有缩放变换，用于在缩略图上按比例绘制
+     */
+    public static void paintTextWatermark(
+            Graphics2D g2d,
+            int width,
+            int height,
+            String text,
+            Font font,
+            Color textColor,
+            boolean hasShadow,
+            boolean hasOutline,
+            double rotation,
+            WatermarkPosition position,
+            Point customPosition) {
+
+        // 设置抗锯齿
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        // 计算文本尺寸
+        FontMetrics fm = g2d.getFontMetrics(font);
+        int textWidth = fm.stringWidth(text);
+        int ascent = fm.getAscent();
+
+        // 计算水印位置（文字基线起点）
+        Point origin = textOrigin(width, height, textWidth, ascent, position, customPosition);
+        drawText(g2d, text, font, textColor, hasShadow, hasOutline, rotation, origin.x, origin.y, textWidth, ascent);
+    }
+
+    /**
+     * 以 (x, y) 为基线起点绘制文字、阴影和描边，绕文字中心旋转
+     */
+    static void drawText(Graphics2D g2d, String text, Font font, Color textColor, boolean hasShadow, boolean hasOutline,
+                         double rotation, int x, int y, int textWidth, int ascent) {
+        // 设置字体和颜色
+        g2d.setFont(font);
+        g2d.setColor(textColor);
+
+        // 应用旋转（在已有变换的基础上叠加）
+        AffineTransform origTransform = g2d.getTransform();
+        g2d.rotate(Math.toRadians(rotation), x + textWidth/2.0, y - ascent/2.0);
+
+        // 绘制阴影效果
+        if (hasShadow) {
+            Color shadowColor = new Color(0, 0, 0, textColor.getAlpha() / 2);
+            g2d.setColor(shadowColor);
+            g2d.drawString(text, x + 2, y + 2);
+            g2d.setColor(textColor);
+        }
+
+        // 绘制描边效果
+        if (hasOutline) {
+            Color outlineColor = Color.BLACK;
+            g2d.setColor(outlineColor);
+            // 绘制多个位置的文字以形成描边效果
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    if (dx != 0 || dy != 0) {
+                        g2d.drawString(text, x + dx, y + dy);
+                    }
+                }
+            }
+            g2d.setColor(textColor);
+        }
+
+        // 绘制文字水印
+        g2d.drawString(text, x, y);
+
+        // 恢复原始变换
+        g2d.setTransform(origTransform);
+    }
+
+    /**
+     * 在图片坐标系中绘制图片水印，scale为百分比。g2d可以带有缩放变换，用于在缩略图上按比例绘制
+     */
+    public static void paintImageWatermark(
+            Graphics2D g2d,
+            int originalWidth,
+            int originalHeight,
+            BufferedImage watermarkImage,
+            double scale,
+            int opacity,
+            double rotation,
+            WatermarkPosition position,
+            Point customPosition) {
+
+        // 设置抗锯齿
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        // 计算水印尺寸
+        int scaledWidth = (int) (watermarkImage.getWidth() * scale / 100);
+        int scaledHeight = (int) (watermarkImage.getHeight() * scale / 100);
+
+        // 计算水印位置
+        Point origin = imageOrigin(originalWidth, originalHeight, scaledWidth, scaledHeight, position, customPosition);
+        drawImage(g2d, watermarkImage, scaledWidth, scaledHeight, opacity, rotation, origin.x, origin.y);
+    }
+
+    /**
+     * 以 (x, y) 为左上角按指定尺寸和透明度绘制水印图片，绕图片中心旋转
+     */
+    static void drawImage(Graphics2D g2d, BufferedImage watermarkImage, int scaledWidth, int scaledHeight,
+                          int opacity, double rotation, int x, int y) {
+        // 如果需要调整透明度，则创建带透明度的水印图像
+        BufferedImage finalWatermarkImage = watermarkImage;
+        if (opacity < 100) {
+            // 创建带透明度的水印图像
+            BufferedImage transparentWatermark = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2dWatermark = transparentWatermark.createGraphics();
+
+            // 设置透明度
+            float alpha = opacity / 100.0f;
+            g2dWatermark.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
+
+            // 绘制水印图像
+            g2dWatermark.drawImage(watermarkImage, 0, 0, scaledWidth, scaledHeight, null);
+            g2dWatermark.dispose();
+
+            finalWatermarkImage = transparentWatermark;
+        }
+
+        // 应用旋转（在已有变换的基础上叠加）
+        if (rotation != 0) {
+            AffineTransform origTransform = g2d.getTransform();
+            g2d.rotate(Math.toRadians(rotation), x + scaledWidth/2.0, y + scaledHeight/2.0);
+            g2d.drawImage(finalWatermarkImage, x, y, scaledWidth, scaledHeight, null);
+            g2d.setTransform(origTransform);
+        } else {
+            // 直接绘制水印图像
+            g2d.drawImage(finalWatermarkImage, x, y, scaledWidth, scaledHeight, null);
+        }
+    }
+
+    // 计算文本水印的基线起点
+    static Point textOrigin(int width, int height, int textWidth, int ascent,
+                            WatermarkPosition position, Point customPosition) {
+        int x = 0, y = 0;
+
+        // 如果有自定义位置，则使用自定义位置，否则使用预设位置
+        if (customPosition != null) {
+            x = customPosition.x;
+            y = customPosition.y;
+        } else {
+            int margin = 20;
+            switch (position) {
+                case TOP_LEFT:
+                    x = margin;
+                    y = margin + ascent;
+                    break;
+                case TOP_CENTER:
+                    x = (width - textWidth) / 2;
+                    y = margin + ascent;
+                    break;
+                case TOP_RIGHT:
+                    x = width - textWidth - margin;
+                    y = margin + ascent;
+                    break;
+                case CENTER_LEFT:
+                    x = margin;
+                    y = (height + ascent) / 2;
+                    break;
+                case CENTER:
+                    x = (width - textWidth) / 2;
+                    y = (height + ascent) / 2;
+                    break;
+                case CENTER_RIGHT:
+                    x = width - textWidth - margin;
+                    y = (height + ascent) / 2;
+                    break;
+                case BOTTOM_LEFT:
+                    x = margin;
+                    y = height - margin;
+                    break;
+                case BOTTOM_CENTER:
+                    x = (width - textWidth) / 2;
+                    y = height - margin;
+                    break;
+                case BOTTOM_RIGHT:
+                    x = width - textWidth - margin;
+                    y = height - margin;
+                    break;
+            }
+        }
+        return new Point(x, y);
+    }
+
+    // 计算图片水印的左上角位置
+    static Point imageOrigin(int originalWidth, int originalHeight, int scaledWidth, int scaledHeight,
+                                     WatermarkPosition position, Point customPosition) {
+        int x = 0, y = 0;
+
+        // 如果有自定义位置，则使用自定义位置，否则使用预设位置
+        if (customPosition != null) {
+            x = customPosition.x;
+            y = customPosition.y;
+        } else {
+            int margin = 20;
+            switch (position) {
+                case TOP_LEFT:
+                    x = margin;
+                    y = margin;
+                    break;
+                case TOP_CENTER:
+                    x = (originalWidth - scaledWidth) / 2;
+                    y = margin;
+                    break;
+                case TOP_RIGHT:
+                    x = originalWidth - scaledWidth - margin;
+                    y = margin;
+                    break;
+                case CENTER_LEFT:
+                    x = margin;
+                    y = (originalHeight - scaledHeight) / 2;
+                    break;
+                case CENTER:
+                    x = (originalWidth - scaledWidth) / 2;
+                    y = (originalHeight - scaledHeight) / 2;
+                    break;
+                case CENTER_RIGHT:
+                    x = originalWidth - scaledWidth - margin;
+                    y = (originalHeight - scaledHeight) / 2;
+                    break;
+                case BOTTOM_LEFT:
+                    x = margin;
+                    y = originalHeight - scaledHeight - margin;
+                    break;
+                case BOTTOM_CENTER:
+                    x = (originalWidth - scaledWidth) / 2;
+                    y = originalHeight - scaledHeight - margin;
+                    break;
+                case BOTTOM_RIGHT:
+                    x = originalWidth - scaledWidth - margin;
+                    y = originalHeight - scaledHeight - margin;
+                    break;
+            }
+        }
+        return new Point(x, y);
+    }
+}
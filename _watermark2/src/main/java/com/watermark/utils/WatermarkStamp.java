@@ -0,0 +1,294 @@
+package com.watermark.utils;
+
+import com.watermark.model.WatermarkTemplate;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预合成的水印图章：把旋转、透明度、阴影和描边一次性栅格化为预乘alpha的ARGB图像。
+ * 图章与水印位置无关，以水印锚点（文字基线起点或图片左上角）为原点保存偏移量，
+ * 批量处理时同一参数只栅格化一次，之后每张图片只需按位置做一次混合。
+ * 文本图章由GlyphAtlas中缓存的字形拼成，文字随图片变化时只需重新排版和贴图。
+ * 平铺模式下图章按以图片中心为原点的网格重复，每个格子混合一次；
+ * 需要Graphics2D绘制时（如缩略图）改用缓存的平铺图案填充。
+ */
+public class WatermarkStamp {
+    // 同时缓存的图章数量，批处理通常只用一个
+    private static final int MAX_CACHED_STAMPS = 8;
+    // 缓存图章的像素总数上限（约64MB），大字号旋转的图章很大
+    private static final long MAX_CACHED_PIXELS = 16L * 1024 * 1024;
+
+    private static final Map<List<Object>, WatermarkStamp> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedPixels = 0;
+
+    private final BufferedImage image;
+    // 每行非透明像素的区间，供混合内核跳过透明角落
+    private final int[] spans;
+    // 图章左上角相对锚点的偏移
+    private final int offsetX;
+    private final int offsetY;
+    // 计算锚点位置用的尺寸：文字为宽度和上升高度，图片为缩放后的宽高
+    private final int anchorWidth;
+    private final int anchorHeight;
+    private final boolean text;
+
+    // 平铺图案缓存，按间距和交错方式区分
+    private BufferedImage pattern;
+    private int patternSpacing = -1;
+    private boolean patternStagger;
+
+    private WatermarkStamp(BufferedImage image, int offsetX, int offsetY, int anchorWidth, int anchorHeight, boolean text) {
+        this.image = image;
+        this.spans = StampBlender.opaqueSpans(image);
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.anchorWidth = anchorWidth;
+        this.anchorHeight = anchorHeight;
+        this.text = text;
+    }
+
+    /**
+     * 获取模板对应的图章，相同的外观参数（不含位置）共用同一个图章。
+     * 图片水印模板需要传入已加载的水印图片，按对象身份区分。
+     * 按图片替换了文字变量的模板每次新建图章，不放入缓存，以免挤掉可以复用的图章
+     */
+    public static WatermarkStamp of(WatermarkTemplate template, BufferedImage watermarkImage) {
+        if (template.isPerImage()) {
+            return create(template, watermarkImage);
+        }
+
+        List<Object> key = keyOf(template, watermarkImage);
+        synchronized (CACHE) {
+            WatermarkStamp stamp = CACHE.get(key);
+            if (stamp != null) {
+                return stamp;
+            }
+        }
+        // 在锁外栅格化，各合成线程可以同时创建图章；并发创建了同一个图章时保留先放入的
+        WatermarkStamp stamp = create(template, watermarkImage);
+        synchronized (CACHE) {
+            WatermarkStamp existing = CACHE.putIfAbsent(key, stamp);
+            if (existing != null) {
+                return existing;
+            }
+            cachedPixels += stamp.pixelCount();
+            evict();
+            return stamp;
+        }
+    }
+
+    private static WatermarkStamp create(WatermarkTemplate template, BufferedImage watermarkImage) {
+        return template.getType() == WatermarkTemplate.TemplateType.IMAGE
+                ? createImageStamp(template, watermarkImage)
+                : createTextStamp(template);
+    }
+
+    // 按最久未使用的顺序淘汰，至少保留刚放入的图章
+    private static void evict() {
+        Iterator<WatermarkStamp> eldest = CACHE.values().iterator();
+        while (CACHE.size() > 1 && (CACHE.size() > MAX_CACHED_STAMPS || cachedPixels > MAX_CACHED_PIXELS)) {
+            cachedPixels -= eldest.next().pixelCount();
+            eldest.remove();
+        }
+    }
+
+    private long pixelCount() {
+        return (long) image.getWidth() * image.getHeight();
+    }
+
+    private static List<Object> keyOf(WatermarkTemplate template, BufferedImage watermarkImage) {
+        if (template.getType() == WatermarkTemplate.TemplateType.IMAGE) {
+            return Arrays.asList(WatermarkTemplate.TemplateType.IMAGE, watermarkImage,
+                    template.getImageScale(), template.getImageOpacity(), template.getRotation());
+        }
+        return Arrays.asList(WatermarkTemplate.TemplateType.TEXT, template.getTextWatermark(),
+                template.getFontName(), template.getFontSize(), template.isBold(), template.isItalic(),
+                template.getTextColor(), template.getTextOpacity(), template.isHasShadow(), template.isHasOutline(),
+                template.getRotation());
+    }
+
+    // 文字从字形图集中贴出为未旋转的一行，旋转在合成图章时对整行一次完成，
+    // 每张图片文字不同时也不必逐张光栅化文字、阴影和描边
+    private static WatermarkStamp createTextStamp(WatermarkTemplate template) {
+        Font font = WatermarkRenderer.createFont(template.getFontName(), template.getFontSize(), template.isBold(), template.isItalic());
+        Color color = WatermarkRenderer.applyOpacity(template.getTextColor(), template.getTextOpacity());
+        String text = template.getTextWatermark();
+
+        GlyphAtlas atlas = GlyphAtlas.of(font, color, template.isHasShadow(), template.isHasOutline());
+        GlyphAtlas.Line line = atlas.layout(text);
+        int textWidth = atlas.stringWidth(text);
+        int ascent = atlas.getAscent();
+        Rectangle lineBounds = line.getBounds();
+        if (template.getRotation() == 0) {
+            return new WatermarkStamp(line.getImage(), lineBounds.x, lineBounds.y, textWidth, ascent, true);
+        }
+
+        // 绕文字中心旋转，与drawText一致
+        Rectangle bounds = rotatedBounds(lineBounds, template.getRotation(), textWidth / 2.0, -ascent / 2.0);
+        BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.translate(-bounds.x, -bounds.y);
+        g2d.rotate(Math.toRadians(template.getRotation()), textWidth / 2.0, -ascent / 2.0);
+        g2d.drawImage(line.getImage(), lineBounds.x, lineBounds.y, null);
+        g2d.dispose();
+        return new WatermarkStamp(image, bounds.x, bounds.y, textWidth, ascent, true);
+    }
+
+    private static WatermarkStamp createImageStamp(WatermarkTemplate template, BufferedImage watermarkImage) {
+        int scaledWidth = (int) (watermarkImage.getWidth() * template.getImageScale() / 100);
+        int scaledHeight = (int) (watermarkImage.getHeight() * template.getImageScale() / 100);
+        Rectangle bounds = rotatedBounds(new Rectangle2D.Double(0, 0, scaledWidth, scaledHeight),
+                template.getRotation(), scaledWidth / 2.0, scaledHeight / 2.0);
+
+        BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.translate(-bounds.x, -bounds.y);
+        WatermarkRenderer.drawImage(g2d, watermarkImage, scaledWidth, scaledHeight,
+                template.getImageOpacity(), template.getRotation(), 0, 0);
+        g2d.dispose();
+        return new WatermarkStamp(image, bounds.x, bounds.y, scaledWidth, scaledHeight, false);
+    }
+
+    // 旋转后的整数外接矩形，四周留出抗锯齿边缘
+    private static Rectangle rotatedBounds(Rectangle2D box, double rotation, double centerX, double centerY) {
+        Rectangle bounds = AffineTransform.getRotateInstance(Math.toRadians(rotation), centerX, centerY)
+                .createTransformedShape(box).getBounds();
+        bounds.grow(2, 2);
+        return bounds;
+    }
+
+    /**
+     * 图章在指定尺寸的原图中的位置，位置取自模板，未裁剪到图片范围内。平铺模式下为整张图片
+     */
+    public Rectangle boundsIn(int width, int height, WatermarkTemplate template) {
+        if (template.isTiled()) {
+            return new Rectangle(0, 0, width, height);
+        }
+        Point origin = text
+                ? WatermarkRenderer.textOrigin(width, height, anchorWidth, anchorHeight,
+                WatermarkRenderer.positionOf(template), template.getCustomPosition())
+                : WatermarkRenderer.imageOrigin(width, height, anchorWidth, anchorHeight,
+                WatermarkRenderer.positionOf(template), template.getCustomPosition());
+        return new Rectangle(origin.x + offsetX, origin.y + offsetY, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * 把图章绘制到原图坐标系中，width和height为原图尺寸
+     */
+    public void paint(Graphics2D g2d, int width, int height, WatermarkTemplate template) {
+        if (!template.isTiled()) {
+            Rectangle bounds = boundsIn(width, height, template);
+            g2d.drawImage(image, bounds.x, bounds.y, null);
+            return;
+        }
+
+        // 平铺图案的左上角与第0行第0列的图章重合
+        BufferedImage cell = patternFor(template);
+        Paint oldPaint = g2d.getPaint();
+        g2d.setPaint(new TexturePaint(cell, new Rectangle(tileOriginX(width), tileOriginY(height),
+                cell.getWidth(), cell.getHeight())));
+        g2d.fillRect(0, 0, width, height);
+        g2d.setPaint(oldPaint);
+    }
+
+    /**
+     * 直接在目标图片的像素数组上混合图章，位置取自模板
+     */
+    public void blendInto(BufferedImage target, WatermarkTemplate template) {
+        blendRegion(target, target.getWidth(), target.getHeight(), template, 0, 0);
+    }
+
+    /**
+     * 把水印混合到原图的一个区域上：target的左上角对应原图中的 (regionX, regionY)，
+     * width和height为原图尺寸。平铺模式下只混合与该区域相交的格子
+     */
+    public void blendRegion(BufferedImage target, int width, int height, WatermarkTemplate template,
+                            int regionX, int regionY) {
+        if (!template.isTiled()) {
+            Rectangle bounds = boundsIn(width, height, template);
+            blendAt(target, bounds.x - regionX, bounds.y - regionY);
+            return;
+        }
+
+        int pitchX = image.getWidth() + tileSpacing(template);
+        int pitchY = image.getHeight() + tileSpacing(template);
+        int originX = tileOriginX(width);
+        int originY = tileOriginY(height);
+        int right = Math.min(width, regionX + target.getWidth());
+        int bottom = Math.min(height, regionY + target.getHeight());
+
+        // 只遍历与区域相交的行和列，奇数行交错时右移半个间距
+        int firstRow = Math.floorDiv(Math.max(0, regionY) - originY - image.getHeight(), pitchY) + 1;
+        int lastRow = Math.floorDiv(bottom - 1 - originY, pitchY);
+        for (int row = firstRow; row <= lastRow; row++) {
+            int shift = template.isTileStagger() && (row & 1) != 0 ? pitchX / 2 : 0;
+            int firstColumn = Math.floorDiv(Math.max(0, regionX) - originX - shift - image.getWidth(), pitchX) + 1;
+            int lastColumn = Math.floorDiv(right - 1 - originX - shift, pitchX);
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                blendAt(target, originX + shift + column * pitchX - regionX, originY + row * pitchY - regionY);
+            }
+        }
+    }
+
+    /**
+     * 把图章左上角混合到目标图片的 (x, y) 处，目标类型不受混合内核支持时改用Graphics2D
+     */
+    public void blendAt(BufferedImage target, int x, int y) {
+        if (!StampBlender.blend(image, spans, target, x, y)) {
+            Graphics2D g2d = target.createGraphics();
+            g2d.drawImage(image, x, y, null);
+            g2d.dispose();
+        }
+    }
+
+    /**
+     * 把图章合成为一个平铺单元：相邻图章之间留出spacing像素，交错时单元包含两行，
+     * 第二行右移半个间距，超出单元右侧的部分绕回左侧，用作TexturePaint时可无缝拼接
+     */
+    public static BufferedImage createPattern(BufferedImage stamp, int spacing, boolean stagger) {
+        int pitchX = stamp.getWidth() + Math.max(0, spacing);
+        int pitchY = stamp.getHeight() + Math.max(0, spacing);
+        BufferedImage cell = new BufferedImage(pitchX, stagger ? pitchY * 2 : pitchY, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = cell.createGraphics();
+        g2d.drawImage(stamp, 0, 0, null);
+        if (stagger) {
+            g2d.drawImage(stamp, pitchX / 2, pitchY, null);
+            g2d.drawImage(stamp, pitchX / 2 - pitchX, pitchY, null);
+        }
+        g2d.dispose();
+        return cell;
+    }
+
+    private synchronized BufferedImage patternFor(WatermarkTemplate template) {
+        int spacing = tileSpacing(template);
+        if (pattern == null || patternSpacing != spacing || patternStagger != template.isTileStagger()) {
+            pattern = createPattern(image, spacing, template.isTileStagger());
+            patternSpacing = spacing;
+            patternStagger = template.isTileStagger();
+        }
+        return pattern;
+    }
+
+    private static int tileSpacing(WatermarkTemplate template) {
+        return Math.max(0, template.getTileSpacing());
+    }
+
+    // 平铺网格以图片中心为基准，第0行第0列的图章居中
+    private int tileOriginX(int width) {
+        return (width - image.getWidth()) / 2;
+    }
+
+    private int tileOriginY(int height) {
+        return (height - image.getHeight()) / 2;
+    }
+}
@@ -0,0 +1,247 @@
+package com.watermark.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ExifReader：按两种字节序手工构造APP1段，检查各字段的读取；截断或偏移量越界的文件不能抛出异常
+ */
+class ExifReaderTest {
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+
+    // TIFF结构中各部分的偏移量，从字节序标记开始计算
+    private static final int IFD0 = 8;
+    private static final int IFD0_COUNT = 5;
+    private static final int MAKE_OFFSET = IFD0 + 2 + IFD0_COUNT * 12 + 4;
+    private static final int DATE_TIME_OFFSET = MAKE_OFFSET + 8;
+    private static final int EXIF_IFD = DATE_TIME_OFFSET + 20;
+    private static final int ORIGINAL_OFFSET = EXIF_IFD + 2 + 12 + 4;
+    private static final int IFD1 = ORIGINAL_OFFSET + 20;
+    private static final int THUMBNAIL_OFFSET = IFD1 + 2 + 2 * 12 + 4;
+
+    @Test
+    void readsLittleEndianExif() throws IOException {
+        assertFullExif(ExifReader.read(jpeg(tiff(ByteOrder.LITTLE_ENDIAN, true))));
+    }
+
+    @Test
+    void readsBigEndianExif() throws IOException {
+        assertFullExif(ExifReader.read(jpeg(tiff(ByteOrder.BIG_ENDIAN, true))));
+    }
+
+    @Test
+    void readsSameValuesFromFile(@TempDir Path directory) throws IOException {
+        byte[] data = jpeg(tiff(ByteOrder.BIG_ENDIAN, true));
+        File file = directory.resolve("photo.jpg").toFile();
+        Files.write(file.toPath(), data);
+        assertFullExif(ExifReader.read(file));
+    }
+
+    @Test
+    void fallsBackToModifiedTimeWithoutOriginal() throws IOException {
+        ExifReader.ExifData exif = ExifReader.read(jpeg(tiff(ByteOrder.LITTLE_ENDIAN, false)));
+        assertNotNull(exif);
+        assertEquals(localTime(2020, 1, 2, 3, 4, 5), exif.getCaptureTime());
+    }
+
+    @Test
+    void readsFrameSizeWithoutExif() throws IOException {
+        ExifReader.ExifData exif = ExifReader.read(baseJpeg());
+        assertNotNull(exif);
+        assertEquals(WIDTH, exif.getWidth());
+        assertEquals(HEIGHT, exif.getHeight());
+        assertEquals(1, exif.getOrientation());
+        assertEquals(-1, exif.getCaptureTime());
+        assertNull(exif.getMake());
+        assertNull(exif.getThumbnail());
+    }
+
+    @Test
+    void returnsNullForTruncatedFile() throws IOException {
+        byte[] data = jpeg(tiff(ByteOrder.LITTLE_ENDIAN, true));
+        // 读取器从SOF标记开始读9个字节取得尺寸，在此之前截断的文件都没有结果
+        int frameEnd = startOfFrame(data) + 9;
+        for (int length = 0; length < data.length; length++) {
+            ExifReader.ExifData exif = ExifReader.read(Arrays.copyOf(data, length));
+            if (length < frameEnd) {
+                assertNull(exif, "截断到 " + length + " 字节");
+            } else {
+                assertNotNull(exif, "截断到 " + length + " 字节");
+                assertEquals(WIDTH, exif.getWidth());
+                assertEquals(HEIGHT, exif.getHeight());
+            }
+        }
+    }
+
+    @Test
+    void returnsNullForNonJpeg() throws IOException {
+        assertNull(ExifReader.read(new byte[0]));
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB), "png", png);
+        assertNull(ExifReader.read(png.toByteArray()));
+    }
+
+    @Test
+    void keepsValuesReadBeforeOffsetOutsideSegment() throws IOException {
+        // IFD1指针越界：IFD0中的值保留，没有缩略图
+        byte[] tiff = tiff(ByteOrder.BIG_ENDIAN, true);
+        ByteBuffer.wrap(tiff).putInt(IFD0 + 2 + IFD0_COUNT * 12, 0x7FFF0000);
+        ExifReader.ExifData exif = ExifReader.read(jpeg(tiff));
+        assertNotNull(exif);
+        assertEquals(WIDTH, exif.getWidth());
+        assertEquals(6, exif.getOrientation());
+        assertEquals("Canon", exif.getMake());
+        assertEquals(localTime(2023, 5, 6, 7, 8, 9), exif.getCaptureTime());
+        assertNull(exif.getThumbnail());
+
+        // 缩略图长度超出APP1段
+        tiff = tiff(ByteOrder.LITTLE_ENDIAN, true);
+        ByteBuffer.wrap(tiff).order(ByteOrder.LITTLE_ENDIAN).putInt(IFD1 + 2 + 12 + 8, tiff.length);
+        exif = ExifReader.read(jpeg(tiff));
+        assertNotNull(exif);
+        assertEquals(6, exif.getOrientation());
+        assertNull(exif.getThumbnail());
+
+        // IFD0偏移量越界：整段EXIF被忽略，仍返回帧尺寸
+        tiff = tiff(ByteOrder.LITTLE_ENDIAN, true);
+        ByteBuffer.wrap(tiff).order(ByteOrder.LITTLE_ENDIAN).putInt(4, -8);
+        exif = ExifReader.read(jpeg(tiff));
+        assertNotNull(exif);
+        assertEquals(HEIGHT, exif.getHeight());
+        assertEquals(1, exif.getOrientation());
+        assertEquals(-1, exif.getCaptureTime());
+    }
+
+    private static void assertFullExif(ExifReader.ExifData exif) throws IOException {
+        assertNotNull(exif);
+        assertEquals(WIDTH, exif.getWidth());
+        assertEquals(HEIGHT, exif.getHeight());
+        assertEquals(6, exif.getOrientation());
+        assertEquals("Canon", exif.getMake());
+        assertEquals("EOS", exif.getModel());
+        // 原始拍摄时间优先于IFD0中的修改时间
+        assertEquals(localTime(2023, 5, 6, 7, 8, 9), exif.getCaptureTime());
+        assertArrayEquals(thumbnail(), exif.getThumbnail());
+    }
+
+    private static long localTime(int year, int month, int day, int hour, int minute, int second) {
+        return LocalDateTime.of(year, month, day, hour, minute, second)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 构造EXIF的TIFF结构：IFD0含厂商（偏移量存放）、型号（4字节以内，直接存放在条目中）、方向、修改时间和EXIF子IFD指针，
+     * EXIF子IFD含原始拍摄时间，IFD1指向嵌入的缩略图
+     */
+    private static byte[] tiff(ByteOrder order, boolean withOriginal) throws IOException {
+        byte[] thumbnail = thumbnail();
+        ByteBuffer tiff = ByteBuffer.allocate(THUMBNAIL_OFFSET + thumbnail.length).order(order);
+        tiff.put(0, (byte) (order == ByteOrder.BIG_ENDIAN ? 'M' : 'I'));
+        tiff.put(1, tiff.get(0));
+        tiff.putShort(2, (short) 42);
+        tiff.putInt(4, IFD0);
+
+        tiff.putShort(IFD0, (short) IFD0_COUNT);
+        entry(tiff, IFD0, 0, 0x010F, 2, 6, MAKE_OFFSET);
+        entry(tiff, IFD0, 1, 0x0110, 2, 4, 0);
+        ascii(tiff, IFD0 + 2 + 12 + 8, "EOS");
+        entry(tiff, IFD0, 2, 0x0112, 3, 1, 0);
+        tiff.putShort(IFD0 + 2 + 2 * 12 + 8, (short) 6);
+        entry(tiff, IFD0, 3, 0x0132, 2, 20, DATE_TIME_OFFSET);
+        entry(tiff, IFD0, 4, 0x8769, 4, 1, EXIF_IFD);
+        tiff.putInt(IFD0 + 2 + IFD0_COUNT * 12, IFD1);
+        ascii(tiff, MAKE_OFFSET, "Canon");
+        ascii(tiff, DATE_TIME_OFFSET, "2020:01:02 03:04:05");
+
+        if (withOriginal) {
+            tiff.putShort(EXIF_IFD, (short) 1);
+            entry(tiff, EXIF_IFD, 0, 0x9003, 2, 20, ORIGINAL_OFFSET);
+            ascii(tiff, ORIGINAL_OFFSET, "2023:05:06 07:08:09");
+        }
+
+        tiff.putShort(IFD1, (short) 2);
+        entry(tiff, IFD1, 0, 0x0201, 4, 1, THUMBNAIL_OFFSET);
+        entry(tiff, IFD1, 1, 0x0202, 4, 1, thumbnail.length);
+        System.arraycopy(thumbnail, 0, tiff.array(), THUMBNAIL_OFFSET, thumbnail.length);
+        return tiff.array();
+    }
+
+    private static void entry(ByteBuffer tiff, int ifd, int index, int tag, int type, int count, int value) {
+        int entry = ifd + 2 + index * 12;
+        tiff.putShort(entry, (short) tag);
+        tiff.putShort(entry + 2, (short) type);
+        tiff.putInt(entry + 4, count);
+        tiff.putInt(entry + 8, value);
+    }
+
+    // 以\0结尾的ASCII值
+    private static void ascii(ByteBuffer tiff, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < bytes.length; i++) {
+            tiff.put(offset + i, bytes[i]);
+        }
+        tiff.put(offset + bytes.length, (byte) 0);
+    }
+
+    // 在SOI之后插入APP1段
+    private static byte[] jpeg(byte[] tiff) throws IOException {
+        byte[] base = baseJpeg();
+        byte[] signature = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+        int length = 2 + signature.length + tiff.length;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(base, 0, 2);
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write(length >> 8);
+        out.write(length);
+        out.write(signature);
+        out.write(tiff);
+        out.write(base, 2, base.length - 2);
+        return out.toByteArray();
+    }
+
+    private static byte[] baseJpeg() throws IOException {
+        return encode(WIDTH, HEIGHT, 0x3366CC);
+    }
+
+    private static byte[] thumbnail() throws IOException {
+        return encode(16, 12, 0xCC6633);
+    }
+
+    private static byte[] encode(int width, int height, int rgb) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, rgb ^ (x * 7 + y * 3));
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", bytes);
+        return bytes.toByteArray();
+    }
+
+    private static int startOfFrame(byte[] data) {
+        int pos = 2;
+        while ((data[pos + 1] & 0xFF) != 0xC0) {
+            pos += 2 + (((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF));
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,313 @@
+package com.watermark.utils;
+
+import com.watermark.model.WatermarkTemplate;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JpegBlockReencoder：水印范围以外的MCU解码后必须与源文件逐位相同；无法处理的文件返回null而不是抛出异常
+ */
+class JpegBlockReencoderTest {
+    // 故意不是MCU的整数倍，覆盖右边和下边不完整的MCU
+    private static final int WIDTH = 203;
+    private static final int HEIGHT = 157;
+
+    @Test
+    void keepsBlocksOutsideWatermark420() throws IOException {
+        assertBlocksOutsideWatermarkUnchanged(encode(testImage(BufferedImage.TYPE_3BYTE_BGR), true, 0, false));
+    }
+
+    @Test
+    void keepsBlocksOutsideWatermark420WithRestartInterval() throws IOException {
+        assertBlocksOutsideWatermarkUnchanged(encode(testImage(BufferedImage.TYPE_3BYTE_BGR), true, 3, false));
+    }
+
+    @Test
+    void keepsBlocksOutsideWatermark444() throws IOException {
+        assertBlocksOutsideWatermarkUnchanged(encode(testImage(BufferedImage.TYPE_3BYTE_BGR), false, 0, false));
+    }
+
+    @Test
+    void keepsBlocksOutsideWatermark444WithRestartInterval() throws IOException {
+        assertBlocksOutsideWatermarkUnchanged(encode(testImage(BufferedImage.TYPE_3BYTE_BGR), false, 5, false));
+    }
+
+    @Test
+    void keepsBlocksOutsideWatermarkGrayscale() throws IOException {
+        assertBlocksOutsideWatermarkUnchanged(encode(testImage(BufferedImage.TYPE_BYTE_GRAY), false, 4, false));
+    }
+
+    @Test
+    void keepsBlocksOutsideWatermarkWithOptimizedHuffmanTables() throws IOException {
+        // 优化过的Huffman表缺少部分符号，重新编码时改用标准表
+        assertBlocksOutsideWatermarkUnchanged(encode(testImage(BufferedImage.TYPE_3BYTE_BGR), true, 2, true));
+    }
+
+    @Test
+    void reencodesWithoutWatermarkLosslessly() throws IOException {
+        for (boolean subsampled : new boolean[]{true, false}) {
+            for (int restartInterval : new int[]{0, 7}) {
+                byte[] source = encode(testImage(BufferedImage.TYPE_3BYTE_BGR), subsampled, restartInterval, false);
+                byte[] output = JpegBlockReencoder.reencode(source, null, null);
+                assertNotNull(output);
+                assertEquals(countRestartMarkers(source), countRestartMarkers(output));
+                assertEquals(0, countChangedPixels(decode(source), decode(output),
+                        new Rectangle(0, 0, WIDTH, HEIGHT)));
+            }
+        }
+    }
+
+    @Test
+    void fallsBackOnTruncatedFile() throws IOException {
+        byte[] source = encode(testImage(BufferedImage.TYPE_3BYTE_BGR), true, 3, false);
+        WatermarkTemplate template = textTemplate();
+        // 每个长度都截断一次：标记段中途、扫描数据中途以及缺少EOI的文件都必须返回null
+        for (int length = 0; length < source.length - 1; length++) {
+            byte[] truncated = Arrays.copyOf(source, length);
+            assertNull(JpegBlockReencoder.reencode(truncated, template, null), "截断到 " + length + " 字节");
+        }
+    }
+
+    @Test
+    void fallsBackOnSegmentsShorterThanTheirTables() throws IOException {
+        byte[] source = encode(testImage(BufferedImage.TYPE_3BYTE_BGR), true, 3, false);
+        WatermarkTemplate template = textTemplate();
+        Set<Integer> checked = new HashSet<>();
+        for (int[] segment : headerSegments(source)) {
+            int marker = segment[0];
+            if (marker != 0xC0 && marker != 0xC4 && marker != 0xDB && marker != 0xDD && marker != 0xDA) {
+                continue;
+            }
+            // 段长度少写一个字节：表的内容超出标记段，不能越界读到下一个标记段
+            byte[] corrupt = source.clone();
+            int length = segment[2] - 1;
+            corrupt[segment[1] + 2] = (byte) (length >> 8);
+            corrupt[segment[1] + 3] = (byte) length;
+            assertNull(JpegBlockReencoder.reencode(corrupt, template, null), String.format("标记段 %02X", marker));
+            checked.add(marker);
+        }
+        assertEquals(5, checked.size());
+    }
+
+    @Test
+    void fallsBackOnUnsupportedInput() throws IOException {
+        BufferedImage image = testImage(BufferedImage.TYPE_3BYTE_BGR);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        assertNull(JpegBlockReencoder.reencode(png.toByteArray(), textTemplate(), null));
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        ByteArrayOutputStream progressive = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(progressive)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        assertNull(JpegBlockReencoder.reencode(progressive.toByteArray(), textTemplate(), null));
+    }
+
+    private static void assertBlocksOutsideWatermarkUnchanged(byte[] source) throws IOException {
+        WatermarkTemplate template = textTemplate();
+        byte[] output = JpegBlockReencoder.reencode(source, template, null);
+        assertNotNull(output);
+        assertEquals(countRestartMarkers(source), countRestartMarkers(output));
+
+        BufferedImage before = decode(source);
+        BufferedImage after = decode(output);
+        assertEquals(WIDTH, after.getWidth());
+        assertEquals(HEIGHT, after.getHeight());
+
+        int[] sampling = sampling(source);
+        int mcuWidth = 8 * sampling[0];
+        int mcuHeight = 8 * sampling[1];
+        Rectangle bounds = WatermarkRenderer.watermarkBounds(WIDTH, HEIGHT, template, null)
+                .intersection(new Rectangle(0, 0, WIDTH, HEIGHT));
+        assertFalse(bounds.isEmpty());
+
+        // 与水印范围相交的MCU可能被重新编码；色度下采样时解码器按相邻MCU的色度样本插值放大，
+        // 紧挨着这些MCU的一圈像素也会变化，因此再向外扩大一个MCU
+        int left = bounds.x / mcuWidth * mcuWidth;
+        int top = bounds.y / mcuHeight * mcuHeight;
+        int right = (bounds.x + bounds.width + mcuWidth - 1) / mcuWidth * mcuWidth;
+        int bottom = (bounds.y + bounds.height + mcuHeight - 1) / mcuHeight * mcuHeight;
+        Rectangle touched = new Rectangle(left, top, right - left, bottom - top);
+        if (sampling[0] > 1 || sampling[1] > 1) {
+            touched.grow(mcuWidth, mcuHeight);
+        }
+
+        int outside = 0;
+        for (int y = 0; y < HEIGHT; y += mcuHeight) {
+            for (int x = 0; x < WIDTH; x += mcuWidth) {
+                Rectangle mcu = new Rectangle(x, y, mcuWidth, mcuHeight).intersection(new Rectangle(0, 0, WIDTH, HEIGHT));
+                if (!mcu.intersects(touched)) {
+                    assertEquals(0, countChangedPixels(before, after, mcu), "MCU (" + x + ", " + y + ")");
+                    outside++;
+                }
+            }
+        }
+        assertTrue(outside > 0);
+        assertTrue(countChangedPixels(before, after, bounds) > 0, "水印没有写入");
+    }
+
+    private static WatermarkTemplate textTemplate() {
+        WatermarkTemplate template = new WatermarkTemplate();
+        template.setType(WatermarkTemplate.TemplateType.TEXT);
+        template.setTextWatermark("TEST");
+        template.setFontName("Dialog");
+        template.setFontSize(36);
+        template.setBold(true);
+        template.setTextColor(Color.RED);
+        template.setTextOpacity(70);
+        template.setPosition(WatermarkTemplate.WatermarkPosition.CENTER);
+        return template;
+    }
+
+    // 平滑渐变叠加固定种子的噪声，保证每个块都有足够多的非零AC系数
+    private static BufferedImage testImage(int type) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        Random random = new Random(12345);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int r = clamp(x * 255 / WIDTH + random.nextInt(81) - 40);
+                int g = clamp(y * 255 / HEIGHT + random.nextInt(81) - 40);
+                int b = clamp((x + y) * 255 / (WIDTH + HEIGHT) + random.nextInt(81) - 40);
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    // 用ImageIO编码基线JPEG，可选4:4:4采样、重启间隔和优化的Huffman表
+    private static byte[] encode(BufferedImage image, boolean subsampled, int restartInterval, boolean optimizeHuffman)
+            throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            JPEGImageWriteParam param = (JPEGImageWriteParam) writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(0.9f);
+            param.setOptimizeHuffmanTables(optimizeHuffman);
+
+            IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+            String format = "javax_imageio_jpeg_image_1.0";
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+            IIOMetadataNode markerSequence = (IIOMetadataNode) root.getElementsByTagName("markerSequence").item(0);
+            if (!subsampled) {
+                for (Node node = markerSequence.getElementsByTagName("sof").item(0).getFirstChild();
+                     node != null; node = node.getNextSibling()) {
+                    ((IIOMetadataNode) node).setAttribute("HsamplingFactor", "1");
+                    ((IIOMetadataNode) node).setAttribute("VsamplingFactor", "1");
+                }
+            }
+            if (restartInterval > 0) {
+                IIOMetadataNode dri = new IIOMetadataNode("dri");
+                dri.setAttribute("interval", Integer.toString(restartInterval));
+                markerSequence.insertBefore(dri, markerSequence.getElementsByTagName("sos").item(0));
+            }
+            metadata.setFromTree(format, root);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ImageOutputStream output = ImageIO.createImageOutputStream(bytes)) {
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(image, null, metadata), param);
+            }
+            byte[] data = bytes.toByteArray();
+            assertEquals(restartInterval > 0, countRestartMarkers(data) > 0);
+            int[] sampling = sampling(data);
+            assertEquals(image.getType() != BufferedImage.TYPE_BYTE_GRAY && subsampled ? 2 : 1, sampling[0]);
+            return data;
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static BufferedImage decode(byte[] data) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+        assertNotNull(image);
+        return image;
+    }
+
+    private static int countChangedPixels(BufferedImage a, BufferedImage b, Rectangle area) {
+        int changed = 0;
+        for (int y = area.y; y < area.y + area.height; y++) {
+            for (int x = area.x; x < area.x + area.width; x++) {
+                if (a.getRGB(x, y) != b.getRGB(x, y)) {
+                    changed++;
+                }
+            }
+        }
+        return changed;
+    }
+
+    // SOS之前的标记段：{标记, 段起始位置, 段长度}，最后一项为SOS
+    private static List<int[]> headerSegments(byte[] data) {
+        List<int[]> segments = new ArrayList<>();
+        int pos = 2;
+        while (true) {
+            int marker = data[pos + 1] & 0xFF;
+            int length = ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+            segments.add(new int[]{marker, pos, length});
+            if (marker == 0xDA) {
+                return segments;
+            }
+            pos += 2 + length;
+        }
+    }
+
+    // 帧头中最大的水平、垂直采样因子，灰度图为 {1, 1}
+    private static int[] sampling(byte[] data) {
+        for (int[] segment : headerSegments(data)) {
+            if (segment[0] == 0xC0) {
+                int count = data[segment[1] + 9] & 0xFF;
+                int maxH = 1;
+                int maxV = 1;
+                for (int i = 0; count > 1 && i < count; i++) {
+                    int factors = data[segment[1] + 11 + i * 3] & 0xFF;
+                    maxH = Math.max(maxH, factors >> 4);
+                    maxV = Math.max(maxV, factors & 15);
+                }
+                return new int[]{maxH, maxV};
+            }
+        }
+        throw new AssertionError("没有基线帧头");
+    }
+
+    private static int countRestartMarkers(byte[] data) {
+        int count = 0;
+        for (int i = 0; i + 1 < data.length; i++) {
+            if ((data[i] & 0xFF) == 0xFF && (data[i + 1] & 0xFF) >= 0xD0 && (data[i + 1] & 0xFF) <= 0xD7) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
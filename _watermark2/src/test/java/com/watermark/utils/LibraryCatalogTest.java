@@ -0,0 +1,224 @@
+package com.watermark.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LibraryCatalog：记录的读写、重新打开、索引损坏后的重建，以及数据文件末尾不完整记录的截断
+ */
+class LibraryCatalogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void looksUpStoredEntry() throws IOException {
+        LibraryCatalog catalog = new LibraryCatalog(directory.toFile());
+        try {
+            File file = new File("a.jpg");
+            catalog.put(entry(file, 1000L, true));
+            assertEquals(1, catalog.size());
+            assertFullEntry(catalog.lookup(file), file, 1000L);
+            assertNull(catalog.lookup(new File("b.jpg")));
+        } finally {
+            catalog.close();
+        }
+    }
+
+    @Test
+    void replacesEntryForSamePath() throws IOException {
+        LibraryCatalog catalog = new LibraryCatalog(directory.toFile());
+        try {
+            File file = new File("a.jpg");
+            catalog.put(entry(file, 1000L, true));
+            catalog.put(entry(file, 2000L, false));
+            assertEquals(1, catalog.size());
+            LibraryCatalog.Entry entry = catalog.lookup(file);
+            assertTrue(entry.matches(2000L, 2000L + 1));
+            assertFalse(entry.matches(1000L, 1000L + 1));
+            assertEquals(-1, entry.getCaptureTime());
+            assertFalse(entry.hasContentHash());
+        } finally {
+            catalog.close();
+        }
+    }
+
+    @Test
+    void keepsEntriesAfterReopen() throws IOException {
+        storeEntries(20);
+        LibraryCatalog catalog = new LibraryCatalog(directory.toFile());
+        try {
+            assertEquals(20, catalog.size());
+            for (int i = 0; i < 20; i++) {
+                File file = new File("photo" + i + ".jpg");
+                assertFullEntry(catalog.lookup(file), file, 1000L + i);
+            }
+        } finally {
+            catalog.close();
+        }
+    }
+
+    @Test
+    void rebuildsMissingOrCorruptIndex() throws IOException {
+        storeEntries(20);
+        Path index = directory.resolve("catalog.idx");
+
+        Files.delete(index);
+        assertAllEntriesFound(20);
+
+        // 魔数被破坏
+        try (RandomAccessFile file = new RandomAccessFile(index.toFile(), "rw")) {
+            file.writeInt(0);
+        }
+        assertAllEntriesFound(20);
+
+        // 只剩文件头的一部分
+        try (RandomAccessFile file = new RandomAccessFile(index.toFile(), "rw")) {
+            file.setLength(10);
+        }
+        assertAllEntriesFound(20);
+    }
+
+    @Test
+    void dropsIncompleteRecordsWhenRebuilding() throws IOException {
+        storeEntries(5);
+        Path data = directory.resolve("catalog.dat");
+        long complete = Files.size(data);
+
+        // 末尾只写了一半的记录：长度字段声明的字节数超出文件
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(data, StandardOpenOption.APPEND))) {
+            out.writeInt(1000);
+            out.write(new byte[10]);
+        }
+        Files.delete(directory.resolve("catalog.idx"));
+        assertAllEntriesFound(5);
+        assertEquals(complete, Files.size(data));
+
+        // 最后一条记录被截短：前面的记录保留，最后一条丢弃
+        try (RandomAccessFile file = new RandomAccessFile(data.toFile(), "rw")) {
+            file.setLength(complete - 3);
+        }
+        Files.delete(directory.resolve("catalog.idx"));
+        LibraryCatalog catalog = new LibraryCatalog(directory.toFile());
+        try {
+            assertEquals(4, catalog.size());
+            assertNull(catalog.lookup(new File("photo4.jpg")));
+            assertFullEntry(catalog.lookup(new File("photo3.jpg")), new File("photo3.jpg"), 1003L);
+        } finally {
+            catalog.close();
+        }
+        assertTrue(Files.size(data) < complete - 3);
+    }
+
+    @Test
+    void readsVersion1Records() throws IOException {
+        // 第1版记录：没有EXIF方向和相机信息
+        File file = new File("old.jpg");
+        byte[] thumbnail = {1, 2, 3};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(1);
+        record.writeUTF(file.getAbsolutePath());
+        record.writeLong(500L);
+        record.writeLong(600L);
+        record.writeInt(640);
+        record.writeInt(480);
+        record.writeShort(2);
+        record.write(new byte[]{9, 8});
+        record.writeLong(123456789L);
+        record.writeUTF("jpeg");
+        record.writeInt(thumbnail.length);
+        record.write(thumbnail);
+        record.flush();
+
+        Files.createDirectories(directory);
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(directory.resolve("catalog.dat")))) {
+            out.writeInt(bytes.size());
+            out.write(bytes.toByteArray());
+        }
+
+        LibraryCatalog catalog = new LibraryCatalog(directory.toFile());
+        try {
+            LibraryCatalog.Entry entry = catalog.lookup(file);
+            assertNotNull(entry);
+            assertTrue(entry.matches(500L, 600L));
+            assertEquals(640, entry.getWidth());
+            assertEquals(480, entry.getHeight());
+            assertArrayEquals(new byte[]{9, 8}, entry.getContentHash());
+            assertEquals(123456789L, entry.getCaptureTime());
+            assertFalse(entry.hasExif());
+        } finally {
+            catalog.close();
+        }
+    }
+
+    private void storeEntries(int count) throws IOException {
+        LibraryCatalog catalog = new LibraryCatalog(directory.toFile());
+        try {
+            for (int i = 0; i < count; i++) {
+                catalog.put(entry(new File("photo" + i + ".jpg"), 1000L + i, true));
+            }
+        } finally {
+            catalog.close();
+        }
+    }
+
+    private void assertAllEntriesFound(int count) throws IOException {
+        LibraryCatalog catalog = new LibraryCatalog(directory.toFile());
+        try {
+            assertEquals(count, catalog.size());
+            for (int i = 0; i < count; i++) {
+                File file = new File("photo" + i + ".jpg");
+                assertFullEntry(catalog.lookup(file), file, 1000L + i);
+            }
+        } finally {
+            catalog.close();
+        }
+    }
+
+    // 修改时间为lastModified、大小为lastModified+1的记录；withExif为false时模拟非JPEG文件
+    private static LibraryCatalog.Entry entry(File file, long lastModified, boolean withExif) throws IOException {
+        ExifReader.ExifData exif = withExif
+                ? new ExifReader.ExifData(4000, 3000, 6, lastModified * 1000, "Canon", "EOS R5")
+                : null;
+        byte[] hash = withExif ? new byte[]{1, 2, 3, 4, 5, 6, 7, 8} : new byte[0];
+        BufferedImage thumbnail = new BufferedImage(32, 24, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = thumbnail.createGraphics();
+        g2d.setColor(Color.ORANGE);
+        g2d.fillRect(0, 0, 16, 24);
+        g2d.dispose();
+        return LibraryCatalog.Entry.create(file, lastModified, lastModified + 1, 4000, 3000, hash, exif, thumbnail);
+    }
+
+    private static void assertFullEntry(LibraryCatalog.Entry entry, File file, long lastModified) throws IOException {
+        assertNotNull(entry);
+        assertEquals(file.getAbsolutePath(), entry.getPath());
+        assertTrue(entry.matches(lastModified, lastModified + 1));
+        assertEquals(4000, entry.getWidth());
+        assertEquals(3000, entry.getHeight());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, entry.getContentHash());
+        assertEquals(lastModified * 1000, entry.getCaptureTime());
+        assertTrue(entry.hasExif());
+
+        ExifReader.ExifData exif = entry.toExif();
+        assertEquals(6, exif.getOrientation());
+        assertEquals("Canon", exif.getMake());
+        assertEquals("EOS R5", exif.getModel());
+
+        BufferedImage thumbnail = entry.decodeThumbnail();
+        assertEquals(32, thumbnail.getWidth());
+        assertEquals(24, thumbnail.getHeight());
+    }
+}
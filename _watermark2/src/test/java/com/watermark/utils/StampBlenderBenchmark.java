@@ -0,0 +1,174 @@
+package com.watermark.utils;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 对比StampBlender混合内核与Graphics2D.drawImage的耗时，每种目标格式分别测量，并检查两者结果是否逐位相同。
+ * 运行方式：mvn test-compile 后执行
+ * java -cp target/classes:target/test-classes com.watermark.utils.StampBlenderBenchmark [宽] [高] [轮数]
+ * 内核不支持的目标格式（blend返回false）只测量drawImage。
+ */
+public class StampBlenderBenchmark {
+    private static final int[] TARGET_TYPES = {
+            BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_INT_ARGB_PRE,
+            BufferedImage.TYPE_3BYTE_BGR
+    };
+    private static final String[] TARGET_NAMES = {"INT_RGB", "INT_ARGB", "INT_ARGB_PRE", "3BYTE_BGR"};
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        BufferedImage text = textStamp();
+        BufferedImage logo = logoStamp(width / 2, height / 2);
+        System.out.printf("目标 %dx%d，每项取 %d 轮的中位数%n", width, height, rounds);
+        System.out.printf("%-10s %-14s %12s %12s %8s%n", "图章", "目标格式", "drawImage", "内核", "结果");
+        for (int i = 0; i < TARGET_TYPES.length; i++) {
+            run("旋转文字", text, TARGET_TYPES[i], TARGET_NAMES[i], width, height, rounds);
+            run("半透明图片", logo, TARGET_TYPES[i], TARGET_NAMES[i], width, height, rounds);
+        }
+    }
+
+    private static void run(String stampName, BufferedImage stamp, int targetType, String targetName,
+                            int width, int height, int rounds) {
+        int[] spans = StampBlender.opaqueSpans(stamp);
+        BufferedImage base = background(width, height, targetType);
+        int x = (width - stamp.getWidth()) / 2;
+        int y = (height - stamp.getHeight()) / 2;
+
+        BufferedImage drawn = copy(base);
+        long drawTime = median(rounds, drawn, base, target -> {
+            Graphics2D g2d = target.createGraphics();
+            g2d.drawImage(stamp, x, y, null);
+            g2d.dispose();
+        });
+
+        BufferedImage blended = copy(base);
+        boolean supported = StampBlender.blend(stamp, spans, copy(base), x, y);
+        String kernelTime = "不支持";
+        String result = "-";
+        if (supported) {
+            kernelTime = format(median(rounds, blended, base, target -> StampBlender.blend(stamp, spans, target, x, y)));
+            result = samePixels(drawn, blended) ? "相同" : "不同";
+        }
+        System.out.printf("%-10s %-14s %12s %12s %8s%n", stampName, targetName, format(drawTime), kernelTime, result);
+    }
+
+    // 每轮先恢复背景再混合一次，只计混合的耗时；最后一轮的结果留在target中
+    private static long median(int rounds, BufferedImage target, BufferedImage base, Blend blend) {
+        int warmup = Math.max(5, rounds / 2);
+        long[] times = new long[rounds];
+        for (int i = -warmup; i < rounds; i++) {
+            restore(base, target);
+            long start = System.nanoTime();
+            blend.apply(target);
+            long elapsed = System.nanoTime() - start;
+            if (i >= 0) {
+                times[i] = elapsed;
+            }
+        }
+        Arrays.sort(times);
+        return times[rounds / 2];
+    }
+
+    private static String format(long nanos) {
+        return String.format("%.2f ms", nanos / 1e6);
+    }
+
+    private static BufferedImage textStamp() {
+        Font font = new Font(Font.SANS_SERIF, Font.BOLD, 160);
+        String text = "© Photo Watermark 2024";
+        BufferedImage measure = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = measure.createGraphics();
+        FontMetrics metrics = g.getFontMetrics(font);
+        int textWidth = metrics.stringWidth(text);
+        int textHeight = metrics.getHeight();
+        g.dispose();
+
+        // 旋转45度，外接矩形的四个角都是透明的
+        int size = (int) Math.ceil((textWidth + textHeight) / Math.sqrt(2));
+        BufferedImage stamp = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = stamp.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2d.transform(AffineTransform.getRotateInstance(-Math.PI / 4, size / 2.0, size / 2.0));
+        g2d.setFont(font);
+        g2d.setColor(new Color(255, 255, 255, 180));
+        g2d.drawString(text, (size - textWidth) / 2, (size + metrics.getAscent() - metrics.getDescent()) / 2);
+        g2d.dispose();
+        return stamp;
+    }
+
+    private static BufferedImage logoStamp(int width, int height) {
+        BufferedImage stamp = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = stamp.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, new Color(255, 0, 0, 90), width, height, new Color(0, 0, 255, 200)));
+        g2d.fillRect(0, 0, width, height);
+        g2d.setColor(new Color(255, 255, 255, 255));
+        g2d.fillOval(width / 4, height / 4, width / 2, height / 2);
+        g2d.dispose();
+        return stamp;
+    }
+
+    private static BufferedImage background(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Random random = new Random(42);
+        Graphics2D g2d = image.createGraphics();
+        for (int i = 0; i < 400; i++) {
+            g2d.setColor(new Color(random.nextInt(), type != BufferedImage.TYPE_INT_RGB
+                    && type != BufferedImage.TYPE_3BYTE_BGR));
+            g2d.fillRect(random.nextInt(width), random.nextInt(height), random.nextInt(width / 2), random.nextInt(height / 2));
+        }
+        g2d.dispose();
+        return image;
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        restore(image, copy);
+        return copy;
+    }
+
+    private static void restore(BufferedImage source, BufferedImage target) {
+        Object from = data(source);
+        System.arraycopy(from, 0, data(target), 0, java.lang.reflect.Array.getLength(from));
+    }
+
+    private static Object data(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        }
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    // INT_RGB的最高字节不属于任何分量，比较时忽略
+    private static boolean samePixels(BufferedImage a, BufferedImage b) {
+        Object left = data(a);
+        Object right = data(b);
+        if (left instanceof byte[]) {
+            return Arrays.equals((byte[]) left, (byte[]) right);
+        }
+        int mask = a.getType() == BufferedImage.TYPE_INT_RGB ? 0xFFFFFF : 0xFFFFFFFF;
+        int[] l = (int[]) left;
+        int[] r = (int[]) right;
+        for (int i = 0; i < l.length; i++) {
+            if (((l[i] ^ r[i]) & mask) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private interface Blend {
+        void apply(BufferedImage target);
+    }
+}